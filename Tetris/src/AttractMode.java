@@ -0,0 +1,103 @@
+/**
+ * Lets a policy play the board on its own, as a demo. Runs on its own thread and makes one move at a fixed interval
+ * through Board.move, the same way as the keys do, and starts a new game a while after the last one is over.
+ *
+ * The policy plans on a copy of the engine, outside its monitor, so that a policy taking longer than a step of the
+ * game loop, such as BeamPolicy, does not hold up the loop or the painting. A move planned for a piece that has locked
+ * in the meantime is dropped.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.concurrent.locks.LockSupport;
+
+public class AttractMode implements Runnable {
+
+	// Time the game over screen is shown before the next game.
+	private static final long restartNanos = 3000000000L;
+
+	// Fields.
+	private final Board board;
+	private final MovePolicy policy;
+	private final long moveNanos;
+	private final int[] snapshot = new int[GameEngine.snapshotSize];
+	private Thread thread;
+	private volatile boolean running;
+
+	/**
+	 * Constructor for object AttractMode.
+	 * @param board The board to play.
+	 * @param policy Decides the moves.
+	 * @param moveNanos The time between two moves, in nanoseconds.
+	 */
+	public AttractMode(Board board, MovePolicy policy, long moveNanos) {
+		this.board = board;
+		this.policy = policy;
+		this.moveNanos = moveNanos;
+	}
+
+	/**
+	 * Starts playing unless already playing.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		thread = new Thread(this, "attract-mode");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops playing and waits for the thread to finish.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public void stop() throws InterruptedException {
+		Thread thread;
+		synchronized (this) {
+			running = false;
+			thread = this.thread;
+		}
+		if (thread != null) {
+			thread.join();
+		}
+	}
+
+	@Override
+	public void run() {
+		GameEngine engine = board.getEngine();
+		GameEngine copy = new GameEngine(new GameRandom(), Randomizer.create(engine.getRandomizer().getName()));
+		long next = System.nanoTime();
+		while (running) {
+			next += moveNanos;
+			LockSupport.parkNanos(next - System.nanoTime());
+			boolean gameOver;
+			int pieces;
+			synchronized (engine) {
+				gameOver = engine.isGameOver();
+				pieces = engine.getPieces();
+				if (!gameOver) {
+					engine.save(snapshot, 0);
+				}
+			}
+			if (!gameOver) {
+				copy.restore(snapshot, 0);
+				Constants.Movement movement = policy.nextMove(copy);
+				if (movement != null) {
+					synchronized (engine) {
+						if (!engine.isGameOver() && engine.getPieces() == pieces) {
+							board.move(movement);
+						}
+					}
+				}
+			} else {
+				LockSupport.parkNanos(restartNanos);
+				if (running) {
+					board.start();
+				}
+				next = System.nanoTime();
+			}
+		}
+	}
+}
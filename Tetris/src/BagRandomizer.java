@@ -0,0 +1,70 @@
+/**
+ * Deals the seven pieces in shuffled bags, so every piece comes at least once in every fourteen and droughts are
+ * impossible.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.Random;
+
+public class BagRandomizer implements Randomizer {
+
+	// All types.
+	private static final Constants.Type[] types = Constants.Type.values();
+
+	// The order of the bag at the start of every game.
+	private static final Constants.Type[] order = { Constants.Type.Straight, Constants.Type.L, Constants.Type.RevL,
+			Constants.Type.T, Constants.Type.S, Constants.Type.Z, Constants.Type.Square };
+
+	// Fields.
+	private final Constants.Type[] bag = order.clone();
+	private int next = bag.length;
+
+	@Override
+	public void reset() {
+		// The shuffles are done in place, so start every game from the same order for it to depend on the seed only.
+		System.arraycopy(order, 0, bag, 0, bag.length);
+		next = bag.length;
+	}
+
+	@Override
+	public void fill(Random rand, Constants.Type[] buffer, int offset, int count) {
+		for (int i = offset; i < offset + count; i++) {
+			if (next == bag.length) {
+				// Fisher-Yates shuffle of the bag in place.
+				for (int j = bag.length - 1; j > 0; j--) {
+					int k = rand.nextInt(j + 1);
+					Constants.Type type = bag[j];
+					bag[j] = bag[k];
+					bag[k] = type;
+				}
+				next = 0;
+			}
+			buffer[i] = bag[next++];
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "bag";
+	}
+
+	@Override
+	public long getState() {
+		// Four bits for each type in the bag, followed by the index of the next one.
+		long state = next;
+		for (int i = 0; i < bag.length; i++) {
+			state = (state << 4) | bag[i].ordinal();
+		}
+		return state;
+	}
+
+	@Override
+	public void setState(long state) {
+		for (int i = bag.length - 1; i >= 0; i--) {
+			bag[i] = types[(int) (state & 0xF)];
+			state >>>= 4;
+		}
+		next = (int) state;
+	}
+}
@@ -0,0 +1,359 @@
+/**
+ * Many boards played side by side, for evaluating placements in bulk when training bots. The boards are stored as
+ * struct of arrays: the row masks of all boards for one row index lie next to each other, so checking, locking and
+ * clearing the same placement on every board runs through plain int arrays in tight loops that the JIT can unroll and
+ * vectorize. The rules are the ones of GameEngine for a piece hard dropped from its spawn row.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.Arrays;
+
+public class BatchEngine {
+
+	// Board size and the bit layout of a row mask, the same as GameEngine.
+	private static final int height = GameEngine.height;
+	private static final int width = GameEngine.width;
+	private static final int wall = GameEngine.wall;
+	private static final int boardMask = GameEngine.boardMask;
+	private static final int emptyRow = GameEngine.emptyRow;
+	private static final int fullRow = GameEngine.fullRow;
+	private static final int speedIncreaseInterval = 10;
+	private static final int maxLevel = 11;
+
+	// Fields. Row y of board b is rows[y * count + b], the highest block in column x of board b is at row
+	// tops[x * count + b], height if the column is empty.
+	private final int count;
+	private final int[] rows;
+	private final int[] tops;
+	private final int[] score;
+	private final int[] totalLines;
+	private final int[] linesEliminated;
+	private final int[] level;
+	private final int[] pieces;
+	private final boolean[] gameOver;
+
+	// Scratch space, one slot per board.
+	private final int[] collisions;
+	private final int[] landing;
+	private final int[] target;
+	private final int[] covered;
+
+	/**
+	 * Constructor for object BatchEngine. All boards start empty.
+	 * @param count The number of boards.
+	 */
+	public BatchEngine(int count) {
+		this.count = count;
+		rows = new int[height * count];
+		tops = new int[width * count];
+		score = new int[count];
+		totalLines = new int[count];
+		linesEliminated = new int[count];
+		level = new int[count];
+		pieces = new int[count];
+		gameOver = new boolean[count];
+		collisions = new int[count];
+		landing = new int[count];
+		target = new int[count];
+		covered = new int[count];
+		start();
+	}
+
+	/**
+	 * Empties every board and resets the scores.
+	 */
+	public void start() {
+		Arrays.fill(rows, emptyRow);
+		Arrays.fill(tops, height);
+		Arrays.fill(score, 0);
+		Arrays.fill(totalLines, 0);
+		Arrays.fill(linesEliminated, 0);
+		Arrays.fill(level, 1);
+		Arrays.fill(pieces, 0);
+		Arrays.fill(gameOver, false);
+	}
+
+	/**
+	 * Sets the locked blocks of one board.
+	 * @param b The board.
+	 * @param rows The row masks, with the same layout as GameEngine.getRow.
+	 */
+	public void load(int b, int[] rows) {
+		for (int y = 0; y < height; y++) {
+			this.rows[y * count + b] = rows[y];
+		}
+		computeTops(b);
+		gameOver[b] = false;
+	}
+
+	/**
+	 * Collects, for every board, the blocks a shape would overlap at a position. Outside the board counts as blocked.
+	 * @param shape The shape.
+	 * @param rotation The rotation of the shape.
+	 * @param y The row of the top of the box.
+	 * @param x The column of the left of the box.
+	 * @param out Per board, 0 if the shape fits and anything else if it does not.
+	 */
+	public void collide(Shape shape, int rotation, int y, int x, int[] out) {
+		Arrays.fill(out, 0, count, 0);
+		int shift = x + wall;
+		for (int i = 0; i < shape.getBoxSize(); i++) {
+			int mask = shape.getRowMask(rotation, i);
+			if (mask == 0) {
+				continue;
+			}
+			if (shift < 0 || y + i < 0 || y + i >= height) {
+				Arrays.fill(out, 0, count, fullRow);
+				return;
+			}
+			mask <<= shift;
+			int base = (y + i) * count;
+			for (int b = 0; b < count; b++) {
+				out[b] |= rows[base + b] & mask;
+			}
+		}
+	}
+
+	/**
+	 * Finds where a shape dropped straight down from its spawn row lands on every board. The landing row is the
+	 * smallest gap between the lowest block in each column of the shape and the highest block of the board in that
+	 * column. Only a board with a block at or above the shape in one of its columns, which either blocks the spawn or
+	 * leaves a gap under it, is moved down row by row.
+	 * @param shape The shape.
+	 * @param rotation The rotation of the shape.
+	 * @param x The column of the left of the box.
+	 * @param out Per board, the row of the top of the box where it lands, or the spawn row - 1 if it does not fit at
+	 *            the spawn row at all.
+	 */
+	public void drop(Shape shape, int rotation, int x, int[] out) {
+		int spawnY = shape.getSpawnY();
+		for (int i = 0; i < shape.getBoxSize() && spawnY + i < 0; i++) {
+			if (shape.getRowMask(rotation, i) != 0) {
+				// Sticks out above the board.
+				Arrays.fill(out, 0, count, spawnY - 1);
+				return;
+			}
+		}
+		Arrays.fill(out, 0, count, height);
+		for (int c = 0; c < shape.getBoxSize(); c++) {
+			int bottom = shape.getColumnBottom(rotation, c);
+			if (bottom < 0) {
+				continue;
+			}
+			if (x + c < 0 || x + c >= width) {
+				Arrays.fill(out, 0, count, spawnY - 1);
+				return;
+			}
+			int base = (x + c) * count;
+			for (int b = 0; b < count; b++) {
+				out[b] = Math.min(out[b], tops[base + b] - bottom - 1);
+			}
+		}
+		for (int b = 0; b < count; b++) {
+			if (out[b] < spawnY) {
+				int y = spawnY - 1;
+				while (fits(b, shape, rotation, y + 1, x)) {
+					y++;
+				}
+				out[b] = y;
+			}
+		}
+	}
+
+	/**
+	 * Checks if a shape fits on one board.
+	 */
+	private boolean fits(int b, Shape shape, int rotation, int y, int x) {
+		int shift = x + wall;
+		for (int i = 0; i < shape.getBoxSize(); i++) {
+			int mask = shape.getRowMask(rotation, i);
+			if (mask != 0 && (shift < 0 || y + i < 0 || y + i >= height
+					|| (rows[(y + i) * count + b] & (mask << shift)) != 0)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Hard drops a piece on every board that is not over, and clears the full rows. A board is over when the piece does
+	 * not fit where it spawns, like in GameEngine.
+	 * @param shape The shape of the piece.
+	 * @param rotation The rotation to drop it in.
+	 * @param x The column of the left of the box to drop it at.
+	 * @param placed Per board, set to true if the piece was dropped, false if it did not fit at the spawn row in that
+	 *            rotation and column or the board is over. May be null.
+	 */
+	public void place(Shape shape, int rotation, int x, boolean[] placed) {
+		collide(shape, 0, shape.getSpawnY(), shape.getSpawnX(), collisions);
+		for (int b = 0; b < count; b++) {
+			if (collisions[b] != 0) {
+				gameOver[b] = true;
+			}
+		}
+		drop(shape, rotation, x, landing);
+		int spawnY = shape.getSpawnY();
+		int shift = x + wall;
+		for (int b = 0; b < count; b++) {
+			boolean ok = !gameOver[b] && landing[b] >= spawnY;
+			if (ok) {
+				for (int i = 0; i < shape.getBoxSize(); i++) {
+					int mask = shape.getRowMask(rotation, i);
+					if (mask != 0) {
+						rows[(landing[b] + i) * count + b] |= mask << shift;
+					}
+				}
+				for (int i = 0; i < shape.size(); i++) {
+					int top = (x + shape.getOffsetX(rotation, i)) * count + b;
+					tops[top] = Math.min(tops[top], landing[b] + shape.getOffsetY(rotation, i));
+				}
+				pieces[b]++;
+			}
+			if (placed != null) {
+				placed[b] = ok;
+			}
+		}
+		clearLines();
+	}
+
+	/**
+	 * Removes the full rows of every board, moving the rows above down, and scores them like GameEngine. Finding the
+	 * full rows is one branch free pass over all boards, only the boards with full rows are then compacted.
+	 */
+	void clearLines() {
+		Arrays.fill(target, 0, count, 0);
+		for (int y = 0; y < height; y++) {
+			int base = y * count;
+			for (int b = 0; b < count; b++) {
+				// ~row is 0 only for a full row, and then so is its sign bit or'ed with the one of its negation.
+				int open = ~rows[base + b];
+				target[b] |= (((open | -open) >>> 31) ^ 1) << y;
+			}
+		}
+		for (int b = 0; b < count; b++) {
+			int full = target[b];
+			if (full == 0) {
+				continue;
+			}
+			int to = height - 1;
+			for (int y = height - 1; y >= 0; y--) {
+				if ((full & (1 << y)) == 0) {
+					rows[to-- * count + b] = rows[y * count + b];
+				}
+			}
+			for (; to >= 0; to--) {
+				rows[to * count + b] = emptyRow;
+			}
+			computeTops(b);
+			int lines = Integer.bitCount(full);
+			totalLines[b] += lines;
+			linesEliminated[b] += lines;
+			score[b] += lines == 1 ? 40 : lines == 2 ? 100 : lines == 3 ? 300 : 1200;
+			if (linesEliminated[b] >= speedIncreaseInterval && level[b] < maxLevel) {
+				linesEliminated[b] = 0;
+				level[b]++;
+			}
+		}
+	}
+
+	/**
+	 * Finds the highest block of every column of one board.
+	 */
+	private void computeTops(int b) {
+		for (int x = 0; x < width; x++) {
+			tops[x * count + b] = height;
+		}
+		int covered = 0;
+		for (int y = 0; y < height; y++) {
+			int filled = rows[y * count + b] & boardMask;
+			for (int added = filled & ~covered; added != 0; added &= added - 1) {
+				tops[(Integer.numberOfTrailingZeros(added) - wall) * count + b] = y;
+			}
+			covered |= filled;
+		}
+	}
+
+	/**
+	 * Computes features of every board for evaluating it, in one pass over the rows from the top.
+	 * @param aggregateHeight Per board, the sum of the heights of all columns.
+	 * @param holes Per board, the number of empty cells below the highest block of their column.
+	 */
+	public void evaluate(int[] aggregateHeight, int[] holes) {
+		Arrays.fill(covered, 0, count, 0);
+		Arrays.fill(aggregateHeight, 0, count, 0);
+		Arrays.fill(holes, 0, count, 0);
+		for (int y = 0; y < height; y++) {
+			int base = y * count;
+			for (int b = 0; b < count; b++) {
+				int filled = rows[base + b] & boardMask;
+				aggregateHeight[b] += Integer.bitCount(filled & ~covered[b]) * (height - y);
+				covered[b] |= filled;
+				holes[b] += Integer.bitCount(covered[b] & ~filled);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of boards.
+	 * @return The number of boards.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns a row mask of a board, with the same layout as GameEngine.getRow.
+	 * @param b The board.
+	 * @param y The row.
+	 * @return The row mask.
+	 */
+	public int getRow(int b, int y) {
+		return rows[y * count + b];
+	}
+
+	/**
+	 * Returns the score of a board.
+	 * @param b The board.
+	 * @return The score.
+	 */
+	public int getScore(int b) {
+		return score[b];
+	}
+
+	/**
+	 * Returns the number of lines cleared on a board.
+	 * @param b The board.
+	 * @return The number of lines.
+	 */
+	public int getTotalLines(int b) {
+		return totalLines[b];
+	}
+
+	/**
+	 * Returns the level of a board.
+	 * @param b The board.
+	 * @return The level.
+	 */
+	public int getLevel(int b) {
+		return level[b];
+	}
+
+	/**
+	 * Returns the number of pieces placed on a board.
+	 * @param b The board.
+	 * @return The number of pieces.
+	 */
+	public int getPieces(int b) {
+		return pieces[b];
+	}
+
+	/**
+	 * Returns true if a piece did not fit where it spawns on a board.
+	 * @param b The board.
+	 * @return true if the board is over, false otherwise.
+	 */
+	public boolean isGameOver(int b) {
+		return gameOver[b];
+	}
+}
@@ -0,0 +1,432 @@
+/**
+ * A policy that looks ahead over the falling piece and the next pieces of the preview with a beam search. The boards
+ * of the reachable placements of the falling piece start the beam, and every level places the next piece of the
+ * preview on each board of the beam in every rotation and column, dropped straight down, keeping the beamWidth boards
+ * a BoardEvaluator values highest. The piece is then moved to the placement the best board at the deepest level
+ * started from, and planned again if gravity moves it off the path on the way.
+ *
+ * The boards of a level are expanded in parallel on a ForkJoinPool, each worker into its own buffers that are
+ * allocated once and reused for every search. A search stops at the first level that does not finish within the time
+ * budget, so the time to plan a piece is bounded whatever the depth.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class BeamPolicy implements MovePolicy {
+
+	// Defaults, good for real time play.
+	public static final int defaultBeamWidth = 32;
+	public static final int defaultDepth = 3;
+	public static final long defaultBudgetNanos = 10000000L;
+
+	// The board layout of GameEngine.
+	private static final int height = GameEngine.height;
+	private static final int width = GameEngine.width;
+
+	// Placements of one piece on one board, every rotation times every column the box can start at.
+	private static final int minX = -3;
+	private static final int maxChildren = 4 * (width - minX);
+
+	// The rotations of each type that are not the same blocks as an earlier rotation, by ordinal.
+	private static final int[][] distinctRotations = new int[Constants.Type.values().length][];
+
+	static {
+		Constants.Type[] types = Constants.Type.values();
+		for (int t = 1; t < types.length; t++) {
+			Shape shape = Shape.of(types[t]);
+			long[] keys = new long[4];
+			int[] rotations = new int[4];
+			int count = 0;
+			for (int rotation = 0; rotation < 4; rotation++) {
+				keys[rotation] = normalized(shape, rotation);
+				boolean seen = false;
+				for (int r = 0; r < rotation; r++) {
+					seen |= keys[r] == keys[rotation];
+				}
+				if (!seen) {
+					rotations[count++] = rotation;
+				}
+			}
+			distinctRotations[t] = Arrays.copyOf(rotations, count);
+		}
+	}
+
+	// Settings.
+	private final int beamWidth;
+	private final int depth;
+	private final long budgetNanos;
+	private final ForkJoinPool pool;
+
+	// The beam, one board per slot with the lines cleared on the way, the root placement it came from and its value.
+	private int[] beamRows;
+	private int[] beamLines;
+	private int[] beamRoots;
+	private double[] beamValues;
+	private int beamSize;
+
+	// The beam being built, swapped with the beam after every level.
+	private int[] nextRows;
+	private int[] nextLines;
+	private int[] nextRoots;
+	private double[] nextValues;
+
+	// The best candidates of a level, a min heap on value.
+	private final double[] heapValues;
+	private final int[] heapRefs;
+	private int heapSize;
+
+	// Search state.
+	private final Worker[] workers;
+	private final Level level = new Level();
+	private final BoardEvaluator evaluator;
+	private final PlacementFinder finder = new PlacementFinder();
+	private final Constants.Type[] preview = new Constants.Type[PieceQueue.maxPreview];
+	private final Constants.Movement[] path = new Constants.Movement[PlacementFinder.maxPathLength];
+	private final int[] pathRows = new int[PlacementFinder.maxPathLength];
+	private Shape shape;
+	private long deadline;
+	private int pathLength;
+	private int next;
+	private int plannedPiece = -1;
+	private int lastDepth;
+	private long lastNanos;
+
+	/**
+	 * Constructor for object BeamPolicy with the default beam width, depth and budget.
+	 * @param pool The pool to expand the levels on, or null to expand them on the calling thread.
+	 */
+	public BeamPolicy(ForkJoinPool pool) {
+		this(defaultBeamWidth, defaultDepth, defaultBudgetNanos, null, pool);
+	}
+
+	/**
+	 * Constructor for object BeamPolicy.
+	 * @param beamWidth The number of boards kept at every level.
+	 * @param depth The number of pieces looked at, the falling one included, at most 1 + PieceQueue.maxPreview.
+	 * @param budgetNanos The time to plan a piece in, in nanoseconds.
+	 * @param weights The weights of the evaluator, null for the default ones.
+	 * @param pool The pool to expand the levels on, or null to expand them on the calling thread.
+	 */
+	public BeamPolicy(int beamWidth, int depth, long budgetNanos, double[] weights, ForkJoinPool pool) {
+		if (beamWidth < 1 || depth < 1 || depth > 1 + PieceQueue.maxPreview) {
+			throw new IllegalArgumentException("Beam width " + beamWidth + " depth " + depth);
+		}
+		this.beamWidth = beamWidth;
+		this.depth = depth;
+		this.budgetNanos = budgetNanos;
+		this.pool = pool;
+		evaluator = weights == null ? new BoardEvaluator() : new BoardEvaluator(weights);
+		beamRows = new int[beamWidth * height];
+		beamLines = new int[beamWidth];
+		beamRoots = new int[beamWidth];
+		beamValues = new double[beamWidth];
+		nextRows = new int[beamWidth * height];
+		nextLines = new int[beamWidth];
+		nextRoots = new int[beamWidth];
+		nextValues = new double[beamWidth];
+		heapValues = new double[beamWidth];
+		heapRefs = new int[beamWidth];
+		int threads = pool == null ? 1 : pool.getParallelism();
+		workers = new Worker[Math.min(threads, beamWidth)];
+		for (int w = 0; w < workers.length; w++) {
+			workers[w] = new Worker((beamWidth + workers.length - 1) / workers.length, evaluator.getWeights());
+		}
+	}
+
+	@Override
+	public Constants.Movement nextMove(GameEngine engine) {
+		if (engine.isFinished()) {
+			return null;
+		}
+		// Plan again for a new piece, or when gravity has moved the piece off the rest of the path.
+		if (plannedPiece != engine.getPieces()
+				|| (next < pathLength && engine.getFallingPiece().getY() != pathRows[next])) {
+			plannedPiece = engine.getPieces();
+			next = 0;
+			pathLength = 0;
+			long start = System.nanoTime();
+			int best = search(engine, start + budgetNanos);
+			if (best >= 0) {
+				pathLength = finder.getPath(best, path, pathRows);
+			}
+			lastNanos = System.nanoTime() - start;
+		}
+		// Once at the placement, moving down locks the piece.
+		return next < pathLength ? path[next++] : Constants.Movement.Down;
+	}
+
+	/**
+	 * Searches for the best placement of the falling piece.
+	 * @param engine The game.
+	 * @param deadline When to stop, in System.nanoTime.
+	 * @return The index of the placement in the finder, or -1 if there is none.
+	 */
+	private int search(GameEngine engine, long deadline) {
+		this.deadline = deadline;
+		lastDepth = 0;
+		int placements = finder.find(engine);
+		if (placements == 0) {
+			return -1;
+		}
+
+		// The first level, the placements the falling piece can actually reach.
+		Shape root = engine.getFallingPiece().getShape();
+		heapSize = 0;
+		for (int i = 0; i < placements; i++) {
+			offer(evaluator.evaluate(engine, root, finder.getRotation(i), finder.getY(i), finder.getX(i)), i);
+		}
+		// The board of the engine is kept in the last slot of the beam while the first level is built.
+		for (int i = 0; i < height; i++) {
+			beamRows[(beamWidth - 1) * height + i] = engine.getRow(i);
+		}
+		for (int k = 0; k < heapSize; k++) {
+			int i = heapRefs[k];
+			nextLines[k] = BoardEvaluator.place(beamRows, (beamWidth - 1) * height, root, finder.getRotation(i),
+					finder.getY(i), finder.getX(i), nextRows, k * height);
+			nextRoots[k] = i;
+			nextValues[k] = heapValues[k];
+		}
+		swap(heapSize);
+		lastDepth = 1;
+
+		int levels = Math.min(depth - 1, engine.getPreview(preview, PieceQueue.maxPreview));
+		for (int d = 0; d < levels && System.nanoTime() - deadline < 0; d++) {
+			shape = Shape.of(preview[d]);
+			if (!expand()) {
+				break;
+			}
+			lastDepth++;
+		}
+
+		int best = 0;
+		for (int k = 1; k < beamSize; k++) {
+			if (beamValues[k] > beamValues[best]) {
+				best = k;
+			}
+		}
+		return beamRoots[best];
+	}
+
+	/**
+	 * Expands every board of the beam with the next shape and keeps the best children as the new beam.
+	 * @return true if the level finished in time and left any board, false if the beam is unchanged.
+	 */
+	private boolean expand() {
+		int chunk = (beamSize + workers.length - 1) / workers.length;
+		for (int w = 0; w < workers.length; w++) {
+			workers[w].from = Math.min(beamSize, w * chunk);
+			workers[w].to = Math.min(beamSize, (w + 1) * chunk);
+		}
+		if (pool == null || workers.length == 1) {
+			workers[0].expand();
+		} else {
+			level.reinitialize();
+			pool.invoke(level);
+		}
+		heapSize = 0;
+		for (int w = 0; w < workers.length; w++) {
+			Worker worker = workers[w];
+			if (worker.aborted) {
+				return false;
+			}
+			for (int c = 0; c < worker.count; c++) {
+				offer(worker.values[c], w * worker.capacity + c);
+			}
+		}
+		if (heapSize == 0) {
+			return false;
+		}
+		for (int k = 0; k < heapSize; k++) {
+			Worker worker = workers[heapRefs[k] / workers[0].capacity];
+			int c = heapRefs[k] % workers[0].capacity;
+			System.arraycopy(worker.rows, c * height, nextRows, k * height, height);
+			nextLines[k] = worker.lines[c];
+			nextRoots[k] = worker.roots[c];
+			nextValues[k] = worker.values[c];
+		}
+		swap(heapSize);
+		return true;
+	}
+
+	/**
+	 * Makes the beam being built the beam.
+	 */
+	private void swap(int size) {
+		int[] rows = beamRows;
+		beamRows = nextRows;
+		nextRows = rows;
+		int[] lines = beamLines;
+		beamLines = nextLines;
+		nextLines = lines;
+		int[] roots = beamRoots;
+		beamRoots = nextRoots;
+		nextRoots = roots;
+		double[] values = beamValues;
+		beamValues = nextValues;
+		nextValues = values;
+		beamSize = size;
+	}
+
+	/**
+	 * Offers a candidate to the heap of the best beamWidth candidates.
+	 */
+	private void offer(double value, int ref) {
+		if (heapSize < beamWidth) {
+			int i = heapSize++;
+			while (i > 0 && heapValues[(i - 1) / 2] > value) {
+				heapValues[i] = heapValues[(i - 1) / 2];
+				heapRefs[i] = heapRefs[(i - 1) / 2];
+				i = (i - 1) / 2;
+			}
+			heapValues[i] = value;
+			heapRefs[i] = ref;
+		} else if (value > heapValues[0]) {
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= heapSize) {
+					break;
+				}
+				if (child + 1 < heapSize && heapValues[child + 1] < heapValues[child]) {
+					child++;
+				}
+				if (heapValues[child] >= value) {
+					break;
+				}
+				heapValues[i] = heapValues[child];
+				heapRefs[i] = heapRefs[child];
+				i = child;
+			}
+			heapValues[i] = value;
+			heapRefs[i] = ref;
+		}
+	}
+
+	/**
+	 * Returns the number of pieces the last search looked at before it finished or ran out of time.
+	 * @return The depth reached, 0 if the piece had no placement.
+	 */
+	public int getLastDepth() {
+		return lastDepth;
+	}
+
+	/**
+	 * Returns the time the last search took.
+	 * @return The time in nanoseconds.
+	 */
+	public long getLastNanos() {
+		return lastNanos;
+	}
+
+	/**
+	 * The blocks of a rotation moved to the top right of the box, four bits per row, without the empty rows.
+	 */
+	private static long normalized(Shape shape, int rotation) {
+		int shift = 32;
+		for (int i = 0; i < shape.getBoxSize(); i++) {
+			int mask = shape.getRowMask(rotation, i);
+			if (mask != 0) {
+				shift = Math.min(shift, Integer.numberOfTrailingZeros(mask));
+			}
+		}
+		long key = 0;
+		for (int i = 0; i < shape.getBoxSize(); i++) {
+			int mask = shape.getRowMask(rotation, i);
+			if (mask != 0) {
+				key = (key << 4) | (mask >>> shift);
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * Expands a range of the boards of the beam into its own buffers, allocated once for the largest share.
+	 */
+	private final class Worker extends RecursiveAction {
+
+		// Added to suppress warning.
+		private static final long serialVersionUID = 1L;
+
+		private final BoardEvaluator evaluator;
+		private final int capacity;
+		private final int[] rows;
+		private final int[] lines;
+		private final int[] roots;
+		private final double[] values;
+		private int from;
+		private int to;
+		private int count;
+		private boolean aborted;
+
+		Worker(int parents, double[] weights) {
+			evaluator = new BoardEvaluator(weights);
+			capacity = parents * maxChildren;
+			rows = new int[capacity * height];
+			lines = new int[capacity];
+			roots = new int[capacity];
+			values = new double[capacity];
+		}
+
+		@Override
+		protected void compute() {
+			expand();
+		}
+
+		void expand() {
+			count = 0;
+			aborted = false;
+			int[] rotations = distinctRotations[shape.getType().ordinal()];
+			for (int p = from; p < to; p++) {
+				if (System.nanoTime() - deadline > 0) {
+					aborted = true;
+					return;
+				}
+				int parent = p * height;
+				for (int rotation : rotations) {
+					// The highest the box can be without its blocks sticking out above the board.
+					int top = 0;
+					while (shape.getRowMask(rotation, top) == 0) {
+						top++;
+					}
+					int startY = Math.max(shape.getSpawnY(), -top);
+					for (int x = minX; x < width; x++) {
+						if (!BoardEvaluator.fits(beamRows, parent, shape, rotation, startY, x)) {
+							continue;
+						}
+						int y = startY;
+						while (BoardEvaluator.fits(beamRows, parent, shape, rotation, y + 1, x)) {
+							y++;
+						}
+						int total = beamLines[p] + BoardEvaluator.place(beamRows, parent, shape, rotation, y, x,
+								rows, count * height);
+						lines[count] = total;
+						roots[count] = beamRoots[p];
+						values[count] = evaluator.evaluate(rows, count * height, total);
+						count++;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs all workers of a level on the pool.
+	 */
+	private final class Level extends RecursiveAction {
+
+		// Added to suppress warning.
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void compute() {
+			for (Worker worker : workers) {
+				worker.reinitialize();
+			}
+			invokeAll(workers);
+		}
+	}
+}
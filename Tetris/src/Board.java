@@ -1,212 +1,377 @@
 /**
- * Board class for tetris. Describes the playing board and all the interactions within it.
+ * Board class for tetris. Displays a GameEngine driven by a GameLoop, all the rules live in the engine.
+ * The engine is only touched while holding its monitor, since the game loop and the event dispatch thread both use it.
  * 
  * @author Fredrik Ollinen Johansson
  */
 
 import java.awt.Color;
 import java.awt.Graphics;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.util.Arrays;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JPanel;
-import javax.swing.Timer;
 
-public class Board extends JPanel implements ActionListener {
+public class Board extends JPanel {
 
 	// Added to suppress warning.
 	private static final long serialVersionUID = 1L;
 
 	// Hight and width (in blocks) of playing board.
-	private final int height = 20;
-	private final int width = 10;
-	private final int speedIncreaseInterval = 10;
+	private final int height = GameEngine.height;
+	private final int width = GameEngine.width;
+
+	// Default delayed auto shift and auto repeat rate in milliseconds, can be overridden with the system properties
+	// tetris.das and tetris.arr.
+	private static final long delayedAutoShift = Long.getLong("tetris.das", 170);
+	private static final long autoRepeatRate = Long.getLong("tetris.arr", 50);
+
+	// Randomizer picking the pieces, bag or uniform, set with the system property tetris.randomizer.
+	private static final String defaultRandomizer = "bag";
+
+	// File the metrics are written to when the game exits, set with the system property tetris.metrics.
+	private static final String metricsFile = System.getProperty("tetris.metrics");
+
+	// Milliseconds between the moves of the computer when it plays on its own, set with the system property
+	// tetris.attract. Only the player plays if unset.
+	private static final Long attractMillis = Long.getLong("tetris.attract");
+
+	// Events kept for listeners that fall behind.
+	private static final int eventCapacity = 4096;
+
+	// Frames between the keyframes sent to spectators.
+	private static final int keyframeInterval = 256;
+
+	// Directory every game is recorded to, set with the system property tetris.replays. Not recorded if unset.
+	private static final String replays = System.getProperty("tetris.replays");
+
+	// Directory of the high scores, set with the system property tetris.scores. Not kept if unset.
+	private static final String scores = System.getProperty("tetris.scores");
 
 	// Non final fields.
-	private Constants.Type[][] board;
-	private Timer timer;
-	private boolean running;
-	private boolean finished;
-	private boolean gameOver;
-	private int score;
-	private int level;
-	private int linesEliminated;
-	private Shape fallingPiece;
-	private Random rand;
+	private GameEngine engine;
+	private GameLoop loop;
+	private InputQueue inputQueue;
+	private InputHandler inputHandler;
+	private Random seeds = new Random();
+	private ReplayRecorder recorder;
+	private SpectatorStream spectators;
+	private GameEventBus events;
+	private GameMetrics metrics;
+	private Leaderboard leaderboard;
+	private ExecutorService scoreWriter;
+	private AttractMode attract;
+
+	// The games over so far, and the rank of the last one for the game over screen, written by the score writer.
+	private int gamesOver;
+	private volatile String rank = "";
+
+	// Size of a square in pixels, computed when the board is resized.
+	private int squareWidth;
+	private int squareHeight;
+
+	// The locked blocks drawn once, and the board changes of the engine they were drawn at.
+	private BufferedImage stack;
+	private int stackChanges;
 
 	/**
 	 * Constructor of Object Board.
 	 * @param main The JFrame this JPanel should be added to.
 	 */
 	public Board(Main main) {
-		board = new Constants.Type[height][width];
+		engine = new GameEngine(new GameRandom(), Randomizer.create(System.getProperty("tetris.randomizer",
+				defaultRandomizer)));
 		setFocusable(true);
-		timer = new Timer(400, this);
+		spectators = new SpectatorStream(engine, keyframeInterval);
+		events = new GameEventBus(eventCapacity);
+		engine.setEvents(events);
+		metrics = new GameMetrics(engine);
+		if (main != null) {
+			metrics.register();
+			if (metricsFile != null) {
+				Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							metrics.dump(metricsFile);
+						} catch (IOException e) {
+							System.err.println("Could not write metrics " + metricsFile + ": " + e);
+						}
+					}
+				}, "metrics-dump"));
+			}
+		}
+		loop = new GameLoop(this);
+		inputQueue = new InputQueue(256);
+		inputHandler = new InputHandler(this, delayedAutoShift * 1000000L, autoRepeatRate * 1000000L);
 		addKeyListener(new InputListener(this));
-		rand = new Random();
+		if (scores != null) {
+			try {
+				leaderboard = new Leaderboard(Paths.get(scores));
+				// Adding forces the log to disk and now and then rewrites the index, not for the game loop to wait on.
+				scoreWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "score-writer");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			} catch (IOException e) {
+				System.err.println("Could not open the high scores in " + scores + ": " + e);
+			}
+		}
+		if (replays != null) {
+			recorder = new ReplayRecorder();
+			engine.setRecorder(recorder);
+		}
+		if (attractMillis != null) {
+			attract = new AttractMode(this, new BeamPolicy(ForkJoinPool.commonPool()), attractMillis * 1000000L);
+		}
 	}
 
 	/**
 	 * Start the game from the beginning.
 	 */
 	public void start() {
-		for (int i = 0; i < board.length; i++) {
-			Arrays.fill(board[i], Constants.Type.Void);
+		synchronized (engine) {
+			saveReplay();
+			engine.setSeed(seeds.nextLong());
+			if (recorder != null) {
+				recorder.begin(engine.getSeed(), engine.getRandomizer().getName());
+			}
+			engine.start();
+			spectators.update();
+		}
+		metrics.gameStarted(System.nanoTime());
+		loop.start();
+		if (attract != null) {
+			attract.start();
 		}
-		running = true;
-		finished = false;
-		gameOver = false;
-		score = 0;
-		level = 1;
-		linesEliminated = 0;
-		timer.start();
-		run();
+		repaint();
 	}
-	
+
 	/**
 	 * Set state to gameover (Only used when it is gameover and we have sent a request to restart the game).
 	 * @param gameOver Set it to true in order to override the gameover state.
 	 */
 	public void setGameOver(boolean gameOver) {
-		this.gameOver = gameOver;
+		synchronized (engine) {
+			engine.setGameOver(gameOver);
+		}
 	}
 
 	/**
-	 * Is called in between every new block generated.
+	 * Saves the state of the game and the phase of the gravity timer as a frame of a ring, without allocating.
+	 * @param ring The ring to save to.
+	 * @param frame The number of the frame.
 	 */
-	private void run() {
-		checkAndRemoveLines();
-		generateNewPiece();
-		if (linesEliminated >= speedIncreaseInterval && level <= 10) {
-			timer.setDelay(timer.getDelay() - 30);
-			linesEliminated = 0;
-			level++;
-		}
-		if (board[fallingPiece.getCoordinates()[0].getY()][fallingPiece
-				.getCoordinates()[0].getX()] != Constants.Type.Void
-				|| board[fallingPiece.getCoordinates()[1].getY()][fallingPiece
-						.getCoordinates()[1].getX()] != Constants.Type.Void
-				|| board[fallingPiece.getCoordinates()[2].getY()][fallingPiece
-						.getCoordinates()[2].getX()] != Constants.Type.Void
-				|| board[fallingPiece.getCoordinates()[3].getY()][fallingPiece
-						.getCoordinates()[3].getX()] != Constants.Type.Void) {
-			timer.stop();
-			gameOver = true;
-			repaint();
+	public void capture(SnapshotRing ring, long frame) {
+		synchronized (engine) {
+			ring.capture(engine, frame, loop.getGravityNanos());
 		}
 	}
 
 	/**
-	 * Check if there is any lines which is full, removes them and adds the appropiate score.
+	 * Rolls the game back to a frame saved with capture, together with the moves recorded for the replay since.
+	 * @param ring The ring to restore from.
+	 * @param frame The number of the frame, which must still be in the ring.
 	 */
-	private void checkAndRemoveLines() {
-		int counter = 0;
-		int lines = 0;
-		for (int i = 19; i >= 0; i--) {
-			counter = 0;
-			for (int j = 0; j < board[0].length; j++) {
-				if (board[i][j] != Constants.Type.Void) {
-					counter++;
-				}
-			}
-			if (counter == 10) {
-				lines++;
-				for (int j = i; j >= 1; j--) {
-					for (int k = 0; k < board[0].length; k++) {
-						board[j][k] = board[j - 1][k];
-					}
-				}
-				for (int j = 0; j < board[0].length; j++) {
-					board[0][j] = Constants.Type.Void;
-				}
-				i++;
-			}
-		}
-		if (lines == 1) {
-			linesEliminated++;
-			score += 40;
-		} else if (lines == 2) {
-			linesEliminated += 2;
-			score += 100;
-		} else if (lines == 3) {
-			linesEliminated += 3;
-			score += 300;
-		} else if (lines == 4) {
-			linesEliminated += 4;
-			score += 1200;
+	public void restore(SnapshotRing ring, long frame) {
+		synchronized (engine) {
+			loop.setGravityNanos(ring.restore(engine, frame));
+			spectators.update();
 		}
+		repaint();
+	}
+
+	/**
+	 * Returns the queue the key events are passed to the game loop in.
+	 * @return The input queue.
+	 */
+	public InputQueue getInputQueue() {
+		return inputQueue;
+	}
+
+	/**
+	 * Returns the handler turning key events into moves, for changing the auto repeat.
+	 * @return The input handler.
+	 */
+	public InputHandler getInputHandler() {
+		return inputHandler;
+	}
+
+	/**
+	 * Makes the moves of the key events queued since the last logic step and the repeats of held keys.
+	 * Must be called while holding the monitor of the engine.
+	 * @param now The time of the logic step, in System.nanoTime.
+	 */
+	void handleInput(long now) {
+		metrics.inputHandled(System.nanoTime());
+		inputQueue.drainTo(inputHandler);
+		inputHandler.update(now);
+	}
+
+	/**
+	 * Returns the stream broadcasting this game to spectators.
+	 * @return The spectator stream.
+	 */
+	public SpectatorStream getSpectators() {
+		return spectators;
+	}
+
+	/**
+	 * Returns the bus the events of the game are published to, for listening to the game without polling it.
+	 * @return The event bus.
+	 */
+	public GameEventBus getEvents() {
+		return events;
+	}
+
+	/**
+	 * Returns the measurements of how the game runs.
+	 * @return The metrics.
+	 */
+	public GameMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns the game loop driving this board.
+	 * @return The game loop.
+	 */
+	public GameLoop getLoop() {
+		return loop;
+	}
+
+	/**
+	 * Returns the engine this board displays.
+	 * @return The game engine.
+	 */
+	public GameEngine getEngine() {
+		return engine;
 	}
 
 	/**
 	 * Called with each repaint call. Reads the model and displays it.
+	 * The locked blocks are copied from a cached image that is only redrawn when the engine reports that they changed.
 	 * @param g The abstract Graphics base class.
 	 */
 	public void paint(Graphics g) {
-		if (!gameOver) {
-			super.paint(g);
+		long start;
+		synchronized (engine) {
+			// After the wait for the monitor, which is no part of painting.
+			start = System.nanoTime();
+			if (!engine.isGameOver()) {
+				super.paint(g);
+			}
+			draw(g, 0);
+		}
+		metrics.frame(start, System.nanoTime());
+	}
 
-			for (int i = 0; i < board.length; i++) {
-				for (int j = 0; j < board[0].length; j++) {
-					drawSquare(g, i * squareHeight(), j * squareWidth(),
-							board[i][j]);
-				}
+	/**
+	 * Renders a frame for the game loop, with the falling piece moved the given part of a row towards the next one.
+	 * Must be called while holding the monitor of the engine.
+	 * @param g The abstract Graphics base class.
+	 * @param fraction How far the piece has fallen towards the next row, 0 to 1.
+	 */
+	void render(Graphics g, double fraction) {
+		g.setColor(getBackground());
+		g.fillRect(0, 0, getWidth(), getHeight());
+		draw(g, engine.canFall() ? fraction : 0);
+	}
+
+	/**
+	 * Draws the model.
+	 * @param g The abstract Graphics base class.
+	 * @param fraction How far the piece has fallen towards the next row, 0 to 1.
+	 */
+	private void draw(Graphics g, double fraction) {
+		if (!engine.isGameOver()) {
+			if (stack == null || stackChanges != engine.getBoardChanges()) {
+				drawStack();
+			}
+			if (stack != null) {
+				g.drawImage(stack, 0, 0, null);
 			}
 
-			for (int i = 0; i < fallingPiece.getCoordinates().length; i++) {
+			Piece fallingPiece = engine.getFallingPiece();
+			int drop = engine.getDropDistance();
+			if (drop > 0) {
+				for (int i = 0; i < fallingPiece.size(); i++) {
+					drawGhost(g, (fallingPiece.getBlockY(i) + drop) * squareHeight(),
+							fallingPiece.getBlockX(i) * squareWidth(), fallingPiece.getType());
+				}
+			}
+			int offset = (int) (fraction * squareHeight);
+			for (int i = 0; i < fallingPiece.size(); i++) {
 				drawSquare(
 						g,
-						fallingPiece.getCoordinates()[i].getY()
-								* squareHeight(),
-						fallingPiece.getCoordinates()[i].getX() * squareWidth(),
+						fallingPiece.getBlockY(i)
+								* squareHeight() + offset,
+						fallingPiece.getBlockX(i) * squareWidth(),
 						fallingPiece.getType());
 			}
 			g.setColor(Color.ORANGE);
-			g.drawString("Score: " + score + " Level: " + level, width + 2, height + 2);
+			g.drawString("Score: " + engine.getScore() + " Level: " + engine.getLevel(), width + 2, height + 2);
 		} else {
 			g.setColor(Color.ORANGE);
-			g.drawString("Score: " + score + " Level: " + level + " GAME OVER", width + 2,
-					height + 2);
+			g.drawString("Score: " + engine.getScore() + " Level: " + engine.getLevel() + " GAME OVER"
+					+ rank, width + 2, height + 2);
 		}
+	}
 
+	/**
+	 * Returns a boolean telling us whether the game is running or not. Not much practical use unless pause will be implemented.
+	 * @return true if game is running, false otherwise.
+	 */
+	public boolean isRunning() {
+		synchronized (engine) {
+			return engine.isRunning();
+		}
 	}
 
-	private void generateNewPiece() {
-		int index = Math.abs(rand.nextInt()%7);
-		switch (index) {
-		case 0:
-			fallingPiece = new Shape(Constants.Type.Straight);
-			break;
-		case 1:
-			fallingPiece = new Shape(Constants.Type.L);
-			break;
-		case 2:
-			fallingPiece = new Shape(Constants.Type.RevL);
-			break;
-		case 3:
-			fallingPiece = new Shape(Constants.Type.T);
-			break;
-		case 4:
-			fallingPiece = new Shape(Constants.Type.S);
-			break;
-		case 5:
-			fallingPiece = new Shape(Constants.Type.Z);
-			break;
-		case 6:
-			fallingPiece = new Shape(Constants.Type.Square);
-			break;
-		default:
+	/**
+	 * Draws all locked blocks into the cached image, creating it if the size of the board changed.
+	 */
+	private void drawStack() {
+		if (squareWidth <= 0 || squareHeight <= 0) {
+			stack = null;
 			return;
 		}
+		if (stack == null) {
+			stack = new BufferedImage(width * squareWidth, height * squareHeight, BufferedImage.TYPE_INT_RGB);
+		}
+		Graphics g = stack.createGraphics();
+		for (int i = 0; i < height; i++) {
+			for (int j = 0; j < width; j++) {
+				drawSquare(g, i * squareHeight, j * squareWidth,
+						engine.getCell(i, j));
+			}
+		}
+		g.dispose();
+		stackChanges = engine.getBoardChanges();
 	}
 
 	/**
-	 * Returns a boolean telling us whether the game is running or not. Not much practical use unless pause will be implemented.
-	 * @return true if game is running, false otherwise.
+	 * Computes the size of a square once for every resize, and drops the cached image which no longer fits.
 	 */
-	public boolean isRunning() {
-		return running;
+	@Override
+	public void setBounds(int x, int y, int width, int height) {
+		super.setBounds(x, y, width, height);
+		if (width / this.width != squareWidth || height / this.height != squareHeight) {
+			squareWidth = width / this.width;
+			squareHeight = height / this.height;
+			stack = null;
+		}
 	}
 
 	/**
@@ -214,7 +379,7 @@ public class Board extends JPanel implements ActionListener {
 	 * @return The width of a square in pixels.
 	 */
 	private int squareWidth() {
-		return (int) getSize().getWidth() / width;
+		return squareWidth;
 	}
 
 	/**
@@ -222,235 +387,164 @@ public class Board extends JPanel implements ActionListener {
 	 * @return The height of a square in pixels.
 	 */
 	int squareHeight() {
-		return (int) getSize().getHeight() / height;
+		return squareHeight;
 	}
 
 	/**
-	 * Make a move from the predefined moves in Constants.
-	 * @param movement The movement to make.
-	 */
-	public void move(Constants.Movement movement) {
-		tryMove(movement);
-	}
-
-	/**
-	 * Try a move. It will not be completed if it is not possible or we have reaced the bottom of the board.
+	 * Make a move from the predefined moves in Constants. Only the rows the piece and its ghost left and entered are
+	 * repainted, and nothing at all once the game loop renders every frame itself.
 	 * @param movement The movement to make.
 	 * @return true if a move was made, false otherwise.
 	 */
-	private boolean tryMove(Constants.Movement movement) {
-		Coordinate[] newCoordinates = new Coordinate[4];
-		Shape newShape;
-		int max;
-		int yMax;
-		int yMin;
-		int xMax;
-		int xMin;
-		switch (movement) {
-		case MoveLeft:
-			xMax = Integer.MIN_VALUE;
-			xMin = Integer.MAX_VALUE;
-			yMax = Integer.MIN_VALUE;
-			yMin = Integer.MAX_VALUE;
-			for (int i = 0; i < fallingPiece.getCoordinates().length; i++) {
-				newCoordinates[i] = new Coordinate(
-						fallingPiece.getCoordinates()[i].getY(),
-						fallingPiece.getCoordinates()[i].getX() - 1);
-				if (newCoordinates[i].getY() > yMax) {
-					yMax = newCoordinates[i].getY();
-				}
-				if (newCoordinates[i].getY() < yMin) {
-					yMin = newCoordinates[i].getY();
-				}
-				if (newCoordinates[i].getX() > xMax) {
-					xMax = newCoordinates[i].getX();
-				}
-				if (newCoordinates[i].getX() < xMin) {
-					xMin = newCoordinates[i].getX();
-				}
-			}
-			if (xMax < 10
-					&& xMin >= 0
-					&& yMax < 20
-					&& yMin >= 0
-					&& board[newCoordinates[0].getY()][newCoordinates[0].getX()] == Constants.Type.Void
-					&& board[newCoordinates[1].getY()][newCoordinates[1].getX()] == Constants.Type.Void
-					&& board[newCoordinates[2].getY()][newCoordinates[2].getX()] == Constants.Type.Void
-					&& board[newCoordinates[3].getY()][newCoordinates[3].getX()] == Constants.Type.Void) {
-				fallingPiece = new Shape(fallingPiece.getType(), newCoordinates);
-				// May be needing validate() here.
-				repaint();
-			} else {
+	public boolean move(Constants.Movement movement) {
+		synchronized (engine) {
+			int top = pieceTop();
+			int bottom = pieceBottom() + engine.getDropDistance();
+			if (!engine.step(movement)) {
 				return false;
 			}
-			break;
-		case MoveRight:
-			xMax = Integer.MIN_VALUE;
-			xMin = Integer.MAX_VALUE;
-			yMax = Integer.MIN_VALUE;
-			yMin = Integer.MAX_VALUE;
-			for (int i = 0; i < fallingPiece.getCoordinates().length; i++) {
-				newCoordinates[i] = new Coordinate(
-						fallingPiece.getCoordinates()[i].getY(),
-						fallingPiece.getCoordinates()[i].getX() + 1);
-				if (newCoordinates[i].getY() > yMax) {
-					yMax = newCoordinates[i].getY();
-				}
-				if (newCoordinates[i].getY() < yMin) {
-					yMin = newCoordinates[i].getY();
-				}
-				if (newCoordinates[i].getX() > xMax) {
-					xMax = newCoordinates[i].getX();
-				}
-				if (newCoordinates[i].getX() < xMin) {
-					xMin = newCoordinates[i].getX();
-				}
+			spectators.update();
+			if (!loop.isActive()) {
+				repaintRows(Math.min(top, pieceTop()), Math.max(bottom, pieceBottom() + engine.getDropDistance()));
 			}
-			if (xMax < 10
-					&& xMin >= 0
-					&& yMax < 20
-					&& yMin >= 0
-					&& board[newCoordinates[0].getY()][newCoordinates[0].getX()] == Constants.Type.Void
-					&& board[newCoordinates[1].getY()][newCoordinates[1].getX()] == Constants.Type.Void
-					&& board[newCoordinates[2].getY()][newCoordinates[2].getX()] == Constants.Type.Void
-					&& board[newCoordinates[3].getY()][newCoordinates[3].getX()] == Constants.Type.Void) {
-				fallingPiece = new Shape(fallingPiece.getType(), newCoordinates);
-				// May be needing validate() here.
-				repaint();
-			} else {
-				return false;
-			}
-			break;
-		case RotateLeft:
-			newShape = fallingPiece.rotateLeft();
-			xMax = Integer.MIN_VALUE;
-			xMin = Integer.MAX_VALUE;
-			yMax = Integer.MIN_VALUE;
-			yMin = Integer.MAX_VALUE;
-			for (int i = 0; i < newShape.getCoordinates().length; i++) {
-				if (newShape.getCoordinates()[i].getY() > yMax) {
-					yMax = newShape.getCoordinates()[i].getY();
-				}
-				if (newShape.getCoordinates()[i].getY() < yMin) {
-					yMin = newShape.getCoordinates()[i].getY();
-				}
-				if (newShape.getCoordinates()[i].getX() > xMax) {
-					xMax = newShape.getCoordinates()[i].getX();
-				}
-				if (newShape.getCoordinates()[i].getX() < xMin) {
-					xMin = newShape.getCoordinates()[i].getX();
-				}
-			}
-			if (xMax < 10
-					&& xMin >= 0
-					&& yMax < 20
-					&& yMin >= 0
-					&& board[newShape.getCoordinates()[0].getY()][newShape
-							.getCoordinates()[0].getX()] == Constants.Type.Void
-					&& board[newShape.getCoordinates()[1].getY()][newShape
-							.getCoordinates()[1].getX()] == Constants.Type.Void
-					&& board[newShape.getCoordinates()[2].getY()][newShape
-							.getCoordinates()[2].getX()] == Constants.Type.Void
-					&& board[newShape.getCoordinates()[3].getY()][newShape
-							.getCoordinates()[3].getX()] == Constants.Type.Void) {
-				fallingPiece = newShape;
-				repaint();
-			}
-			break;
-		case RotateRight:
-			newShape = fallingPiece.rotateRight();
-			xMax = Integer.MIN_VALUE;
-			xMin = Integer.MAX_VALUE;
-			yMax = Integer.MIN_VALUE;
-			yMin = Integer.MAX_VALUE;
-			for (int i = 0; i < newShape.getCoordinates().length; i++) {
-				if (newShape.getCoordinates()[i].getY() > yMax) {
-					yMax = newShape.getCoordinates()[i].getY();
-				}
-				if (newShape.getCoordinates()[i].getY() < yMin) {
-					yMin = newShape.getCoordinates()[i].getY();
-				}
-				if (newShape.getCoordinates()[i].getX() > xMax) {
-					xMax = newShape.getCoordinates()[i].getX();
-				}
-				if (newShape.getCoordinates()[i].getX() < xMin) {
-					xMin = newShape.getCoordinates()[i].getX();
-				}
-			}
-			if (xMax < 10
-					&& xMin >= 0
-					&& yMax < 20
-					&& yMin >= 0
-					&& board[newShape.getCoordinates()[0].getY()][newShape
-							.getCoordinates()[0].getX()] == Constants.Type.Void
-					&& board[newShape.getCoordinates()[1].getY()][newShape
-							.getCoordinates()[1].getX()] == Constants.Type.Void
-					&& board[newShape.getCoordinates()[2].getY()][newShape
-							.getCoordinates()[2].getX()] == Constants.Type.Void
-					&& board[newShape.getCoordinates()[3].getY()][newShape
-							.getCoordinates()[3].getX()] == Constants.Type.Void) {
-				fallingPiece = newShape;
-				repaint();
-			}
-			break;
-		case Down:
-			max = Integer.MIN_VALUE;
-			for (int i = 0; i < fallingPiece.getCoordinates().length; i++) {
-				newCoordinates[i] = new Coordinate(
-						fallingPiece.getCoordinates()[i].getY() + 1,
-						fallingPiece.getCoordinates()[i].getX());
-				if (newCoordinates[i].getY() > max) {
-					max = newCoordinates[i].getY();
-				}
-			}
-			if (max < 20
-					&& board[newCoordinates[0].getY()][newCoordinates[0].getX()] == Constants.Type.Void
-					&& board[newCoordinates[1].getY()][newCoordinates[1].getX()] == Constants.Type.Void
-					&& board[newCoordinates[2].getY()][newCoordinates[2].getX()] == Constants.Type.Void
-					&& board[newCoordinates[3].getY()][newCoordinates[3].getX()] == Constants.Type.Void) {
-				fallingPiece = new Shape(fallingPiece.getType(), newCoordinates);
-				// May be needing validate() here.
-				repaint();
-			} else {
-				finished = true;
-				for (int i = 0; i < fallingPiece.getCoordinates().length; i++) {
-					board[fallingPiece.getCoordinates()[i].getY()][fallingPiece
-							.getCoordinates()[i].getX()] = fallingPiece
-							.getType();
+			return true;
+		}
+	}
+
+	/**
+	 * Advances the engine one gravity tick for the game loop, repainting what changed unless the loop renders itself.
+	 * Must be called while holding the monitor of the engine.
+	 */
+	void tick() {
+		int top = pieceTop();
+		int bottom = pieceBottom();
+		int changes = engine.getBoardChanges();
+		int pieces = engine.getPieces();
+		engine.tick();
+		spectators.update();
+		if (engine.isGameOver()) {
+			saveReplay();
+			saveScore();
+		}
+		if (loop.isActive()) {
+			return;
+		}
+		if (changes == engine.getBoardChanges() && pieces == engine.getPieces() && !engine.isGameOver()) {
+			repaintRows(Math.min(top, pieceTop()), Math.max(bottom, pieceBottom()));
+		} else {
+			repaint();
+		}
+	}
+
+	/**
+	 * Finishes the recording of the current game, if any, and writes it to the replay directory.
+	 * Must be called while holding the monitor of the engine.
+	 */
+	private void saveReplay() {
+		if (recorder == null || !recorder.isRecording()) {
+			return;
+		}
+		recorder.finish(engine.getTicks());
+		Path file = Paths.get(replays, "tetris-" + System.currentTimeMillis() + ".trpl");
+		try {
+			recorder.write(file);
+		} catch (IOException e) {
+			System.err.println("Could not write replay " + file + ": " + e);
+		}
+	}
+
+	/**
+	 * Hands the finished game to the score writer, if high scores are kept, which adds it and shows its rank on the
+	 * game over screen. Must be called while holding the monitor of the engine.
+	 */
+	private void saveScore() {
+		final int game = ++gamesOver;
+		rank = "";
+		if (scoreWriter == null) {
+			return;
+		}
+		final int score = engine.getScore();
+		final int level = engine.getLevel();
+		final int lines = engine.getTotalLines();
+		final int pieces = engine.getPieces();
+		final long seed = engine.getSeed();
+		scoreWriter.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					leaderboard.add(score, level, lines, pieces, seed);
+					String ranked = " Rank: " + leaderboard.rank(score) + " of " + leaderboard.size();
+					synchronized (engine) {
+						// Unless a later game is over already.
+						if (game == gamesOver) {
+							rank = ranked;
+						}
+					}
+					repaint();
+				} catch (IOException e) {
+					System.err.println("Could not save the score: " + e);
 				}
-				return false;
 			}
-			break;
-		default:
-			return false;
+		});
+	}
+
+	/**
+	 * Returns the highest row of the falling piece.
+	 * @return The row.
+	 */
+	private int pieceTop() {
+		Piece piece = engine.getFallingPiece();
+		int top = height;
+		for (int i = 0; i < piece.size(); i++) {
+			top = Math.min(top, piece.getBlockY(i));
 		}
-		return true;
+		return top;
 	}
 
 	/**
-	 * Draw a square within the board.
+	 * Returns the lowest row of the falling piece.
+	 * @return The row.
+	 */
+	private int pieceBottom() {
+		Piece piece = engine.getFallingPiece();
+		int bottom = 0;
+		for (int i = 0; i < piece.size(); i++) {
+			bottom = Math.max(bottom, piece.getBlockY(i));
+		}
+		return bottom;
+	}
+
+	/**
+	 * Repaints a band of rows across the whole board.
+	 * @param top The first row.
+	 * @param bottom The last row.
+	 */
+	private void repaintRows(int top, int bottom) {
+		repaint(0, top * squareHeight, getWidth(), (bottom - top + 1) * squareHeight);
+	}
+
+	/**
+	 * Draw the outline of a square where the falling piece would land.
 	 * @param g The abstract Graphics base class.
 	 * @param y The y coordinate of the top-left corner
 	 * @param x The x coordinate of the top-left corner.
 	 * @param type The type of block
 	 */
-	public void drawSquare(Graphics g, int y, int x, Constants.Type type) {
-		Color color = Constants.colors[type.ordinal()];
-		g.setColor(color);
-		g.fillRect(x, y, squareWidth(), squareHeight());
+	private void drawGhost(Graphics g, int y, int x, Constants.Type type) {
+		g.setColor(Constants.colors[type.ordinal()]);
+		g.drawRect(x, y, squareWidth - 1, squareHeight - 1);
 	}
 
 	/**
-	 * Runs every time timer throws an action.
-	 * @param e The event.
+	 * Draw a square within the board.
+	 * @param g The abstract Graphics base class.
+	 * @param y The y coordinate of the top-left corner
+	 * @param x The x coordinate of the top-left corner.
+	 * @param type The type of block
 	 */
-	@Override
-	public void actionPerformed(ActionEvent e) {
-		if (finished) {
-			finished = false;
-			run();
-		} else {
-			move(Constants.Movement.Down);
-		}
+	public void drawSquare(Graphics g, int y, int x, Constants.Type type) {
+		Color color = Constants.colors[type.ordinal()];
+		g.setColor(color);
+		g.fillRect(x, y, squareWidth, squareHeight);
 	}
 }
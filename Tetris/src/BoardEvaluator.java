@@ -0,0 +1,200 @@
+/**
+ * A linear evaluation of the board a placement leaves behind, the weighted sum of features such as the aggregate
+ * height, the holes, the bumpiness and the lines cleared. Used by bots to pick placements and tuned by WeightTuner.
+ * Keeps its scratch board and features between calls, so one evaluator must not be shared between threads.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.Arrays;
+
+public class BoardEvaluator {
+
+	// The features, in the order of the weights.
+	public static final String[] featureNames = { "aggregateHeight", "holes", "bumpiness", "lines", "wells" };
+	public static final int features = featureNames.length;
+
+	// Well known weights for the first four features, good enough to clear lines for a long time.
+	private static final double[] defaultWeights = { -0.510066, -0.35663, -0.184483, 0.760666, 0 };
+
+	// The board layout of GameEngine.
+	private static final int height = GameEngine.height;
+	private static final int width = GameEngine.width;
+	private static final int wall = GameEngine.wall;
+	private static final int boardMask = GameEngine.boardMask;
+	private static final int emptyRow = GameEngine.emptyRow;
+	private static final int fullRow = GameEngine.fullRow;
+
+	// Fields.
+	private final double[] weights;
+	private final int[] board = new int[height];
+	private final int[] heights = new int[width];
+	private final double[] values = new double[features];
+
+	/**
+	 * Constructor for object BoardEvaluator with the default weights.
+	 */
+	public BoardEvaluator() {
+		this(defaultWeights);
+	}
+
+	/**
+	 * Constructor for object BoardEvaluator.
+	 * @param weights One weight per feature, see featureNames.
+	 */
+	public BoardEvaluator(double[] weights) {
+		if (weights.length != features) {
+			throw new IllegalArgumentException("Expected " + features + " weights, got " + weights.length);
+		}
+		this.weights = weights.clone();
+	}
+
+	/**
+	 * Evaluates the board after locking a shape at a position where it fits and clearing the lines it fills.
+	 * @param engine The game.
+	 * @param shape The shape.
+	 * @param rotation The rotation of the shape.
+	 * @param y The row of the top of the box of the shape.
+	 * @param x The column of the left of the box of the shape.
+	 * @return The value, higher is better.
+	 */
+	public double evaluate(GameEngine engine, Shape shape, int rotation, int y, int x) {
+		for (int i = 0; i < height; i++) {
+			board[i] = engine.getRow(i);
+		}
+		int lines = place(board, 0, shape, rotation, y, x, board, 0);
+		return evaluate(board, 0, lines);
+	}
+
+	/**
+	 * Evaluates a board.
+	 * @param rows The row masks of the board, in the layout of GameEngine.getRow.
+	 * @param from The index of the top row.
+	 * @param lines The number of lines cleared to reach the board.
+	 * @return The value, higher is better.
+	 */
+	public double evaluate(int[] rows, int from, int lines) {
+		measure(rows, from, lines);
+		double value = 0;
+		for (int f = 0; f < features; f++) {
+			value += weights[f] * values[f];
+		}
+		return value;
+	}
+
+	/**
+	 * Returns if a shape fits on a board, the same check as GameEngine.fits.
+	 * @param rows The row masks of the board.
+	 * @param from The index of the top row.
+	 * @param shape The shape.
+	 * @param rotation The rotation of the shape.
+	 * @param y The row of the top of the box of the shape.
+	 * @param x The column of the left of the box of the shape.
+	 * @return true if it fits, false otherwise.
+	 */
+	public static boolean fits(int[] rows, int from, Shape shape, int rotation, int y, int x) {
+		int shift = x + wall;
+		if (shift < 0) {
+			return false;
+		}
+		for (int i = 0; i < shape.getBoxSize(); i++) {
+			int mask = shape.getRowMask(rotation, i);
+			if (mask != 0 && (y + i < 0 || y + i >= height || (rows[from + y + i] & (mask << shift)) != 0)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Locks a shape on a copy of a board and removes the lines it fills. The copy may be the board itself.
+	 * @param rows The row masks of the board.
+	 * @param from The index of the top row.
+	 * @param shape The shape, which must fit at the position.
+	 * @param rotation The rotation of the shape.
+	 * @param y The row of the top of the box of the shape.
+	 * @param x The column of the left of the box of the shape.
+	 * @param into The array to write the new board to.
+	 * @param at The index of its top row.
+	 * @return The number of lines cleared.
+	 */
+	public static int place(int[] rows, int from, Shape shape, int rotation, int y, int x, int[] into, int at) {
+		if (rows != into || from != at) {
+			System.arraycopy(rows, from, into, at, height);
+		}
+		for (int i = 0; i < shape.getBoxSize(); i++) {
+			int mask = shape.getRowMask(rotation, i);
+			if (mask != 0) {
+				into[at + y + i] |= mask << (x + wall);
+			}
+		}
+		// Remove full rows bottom up.
+		int lines = 0;
+		for (int i = height - 1; i >= 0; i--) {
+			if (into[at + i] == fullRow) {
+				lines++;
+			} else if (lines > 0) {
+				into[at + i + lines] = into[at + i];
+			}
+		}
+		Arrays.fill(into, at, at + lines, emptyRow);
+		return lines;
+	}
+
+	/**
+	 * Computes the features of a board into values.
+	 */
+	private void measure(int[] rows, int from, int lines) {
+		Arrays.fill(heights, 0);
+		int holes = 0;
+		int covered = 0;
+		for (int i = 0; i < height; i++) {
+			int filled = rows[from + i] & boardMask;
+			for (int tops = filled & ~covered; tops != 0; tops &= tops - 1) {
+				heights[Integer.numberOfTrailingZeros(tops) - wall] = height - i;
+			}
+			covered |= filled;
+			holes += Integer.bitCount(covered & ~filled);
+		}
+		int aggregateHeight = 0;
+		int bumpiness = 0;
+		int wells = 0;
+		for (int x = 0; x < width; x++) {
+			aggregateHeight += heights[x];
+			if (x > 0) {
+				bumpiness += Math.abs(heights[x] - heights[x - 1]);
+			}
+			// The walls are as high as the board.
+			int left = x > 0 ? heights[x - 1] : height;
+			int right = x < width - 1 ? heights[x + 1] : height;
+			wells += Math.max(0, Math.min(left, right) - heights[x]);
+		}
+		values[0] = aggregateHeight;
+		values[1] = holes;
+		values[2] = bumpiness;
+		values[3] = lines;
+		values[4] = wells;
+	}
+
+	/**
+	 * Returns the weights.
+	 * @return A copy of the weights, one per feature.
+	 */
+	public double[] getWeights() {
+		return weights.clone();
+	}
+
+	/**
+	 * Parses weights written as comma separated numbers.
+	 * @param text The weights, one per feature.
+	 * @return The weights.
+	 */
+	public static double[] parseWeights(String text) {
+		String[] parts = text.split(",");
+		double[] weights = new double[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			weights[i] = Double.parseDouble(parts[i].trim());
+		}
+		return weights;
+	}
+}
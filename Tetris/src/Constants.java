@@ -10,7 +10,10 @@ public class Constants {
 	public enum Type {Void, Straight, L, RevL, T, S, Z, Square};
 	
 	// All the different kind of movements.
-	public enum Movement {MoveLeft, MoveRight, RotateLeft, RotateRight, Down};
+	public enum Movement {MoveLeft, MoveRight, RotateLeft, RotateRight, Down, HardDrop};
+
+	// All the different kinds of events a game publishes, see GameEventBus.
+	public enum Event {Started, PieceSpawned, PieceMoved, PieceRotated, PieceLocked, LinesCleared, LevelUp, GameOver};
 	
 	// Some different predefined colors corresponding to the shapes in this class (BLACK = Void, Straight = RED , ... , CYAN = Square).
 	public static final Color[] colors = {Color.BLACK, Color.RED, Color.YELLOW, Color.MAGENTA, Color.GRAY, Color.BLUE, Color.GREEN, Color.CYAN};
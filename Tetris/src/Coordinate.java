@@ -1,19 +0,0 @@
-
-public class Coordinate {
-
-	private int y;
-	private int x;
-	
-	public Coordinate(int y, int x) {
-		this.y = y;
-		this.x = x;
-	}
-	
-	public int getY() {
-		return y;
-	}
-	
-	public int getX() {
-		return x;
-	}
-}
@@ -0,0 +1,54 @@
+/**
+ * A policy that drops each piece at the reachable placement a BoardEvaluator values highest, the nearest one of
+ * those that are valued the same.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+public class EvaluatorPolicy implements MovePolicy {
+
+	// Fields.
+	private final BoardEvaluator evaluator;
+	private final PlacementFinder finder = new PlacementFinder();
+	private final Constants.Movement[] path = new Constants.Movement[PlacementFinder.maxPathLength];
+	private int pathLength;
+	private int next;
+	private int plannedPiece = -1;
+
+	/**
+	 * Constructor for object EvaluatorPolicy.
+	 * @param evaluator Values the placements.
+	 */
+	public EvaluatorPolicy(BoardEvaluator evaluator) {
+		this.evaluator = evaluator;
+	}
+
+	@Override
+	public Constants.Movement nextMove(GameEngine engine) {
+		if (engine.isFinished()) {
+			return null;
+		}
+		if (plannedPiece != engine.getPieces()) {
+			plannedPiece = engine.getPieces();
+			next = 0;
+			pathLength = 0;
+			int placements = finder.find(engine);
+			Shape shape = engine.getFallingPiece().getShape();
+			int best = -1;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < placements; i++) {
+				double value = evaluator.evaluate(engine, shape, finder.getRotation(i), finder.getY(i),
+						finder.getX(i));
+				if (value > bestValue) {
+					best = i;
+					bestValue = value;
+				}
+			}
+			if (best >= 0) {
+				pathLength = finder.getPath(best, path);
+			}
+		}
+		// Once at the placement, moving down locks the piece.
+		return next < pathLength ? path[next++] : Constants.Movement.Down;
+	}
+}
@@ -0,0 +1,831 @@
+/**
+ * The rules of tetris without any user interface. Holds the playing board, the falling piece and the score,
+ * and is advanced synchronously through step and tick so it can be run headless and as fast as the CPU allows.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class GameEngine {
+
+	// All types, cached since values() returns a new array on every call.
+	private static final Constants.Type[] types = Constants.Type.values();
+
+	// Hight and width (in blocks) of playing board.
+	public static final int height = 20;
+	public static final int width = 10;
+	private static final int speedIncreaseInterval = 10;
+
+	// Gravity delay in milliseconds at level 1 and how much it decreases per level.
+	private static final int initialDelay = 400;
+	private static final int delayDecrease = 30;
+
+	// Bit layout of a row mask. Column x is bit (wall + x), every bit outside the board is a wall and always set.
+	// Shared with the classes that work on row masks directly.
+	static final int wall = 3;
+	static final int emptyRow = ~(((1 << width) - 1) << wall);
+	static final int fullRow = -1;
+	static final int boardMask = ((1 << width) - 1) << wall;
+
+	// Zobrist keys, one random number per cell. The hash of the board is the xor of the keys of all locked blocks.
+	private static final long[] zobrist = new long[height * width];
+
+	static {
+		Random keys = new Random(0x5EED);
+		for (int i = 0; i < zobrist.length; i++) {
+			zobrist[i] = keys.nextLong();
+		}
+	}
+
+	// Non final fields.
+	private int[] rows;
+	private byte[] cells;
+	private int[] columnHeights;
+	private int[] columnHoles;
+	private int holes;
+	private boolean running;
+	private boolean finished;
+	private boolean gameOver;
+	private int score;
+	private int level;
+	private int linesEliminated;
+	private int totalLines;
+	private int clearedRows;
+	private int pieces;
+	private int boardChanges;
+	private int delay;
+	private Piece fallingPiece;
+	private Random rand;
+	private PieceQueue queue;
+	private long seed;
+	private int ticks;
+	private ReplayRecorder recorder;
+	private GameEventBus events;
+	private long hash;
+
+	// Layout of a snapshot, see save. Scalars first, the recorder last among them, then the queue and the arrays.
+	private static final int savedScalars = 24;
+	private static final int savedRecorder = savedScalars - ReplayRecorder.stateSize;
+	private static final int savedQueue = savedScalars;
+	private static final int savedRows = savedQueue + PieceQueue.stateSize;
+	private static final int savedHeights = savedRows + height;
+	private static final int savedHoles = savedHeights + width;
+	private static final int savedCells = savedHoles + width;
+
+	// Number of ints a snapshot of the engine takes.
+	public static final int snapshotSize = savedCells + height * width / 4;
+
+	/**
+	 * Constructor for object GameEngine with an unseeded random generator and the 7-bag randomizer.
+	 */
+	public GameEngine() {
+		this(new GameRandom());
+	}
+
+	/**
+	 * Constructor for object GameEngine with the 7-bag randomizer.
+	 * @param rand The random generator used to pick new pieces.
+	 */
+	public GameEngine(Random rand) {
+		this(rand, new BagRandomizer());
+	}
+
+	/**
+	 * Constructor for object GameEngine.
+	 * @param rand The random generator used to pick new pieces.
+	 * @param randomizer Picks new pieces using the random generator.
+	 */
+	public GameEngine(Random rand, Randomizer randomizer) {
+		rows = new int[height];
+		cells = new byte[height * width];
+		columnHeights = new int[width];
+		columnHoles = new int[width];
+		fallingPiece = new Piece();
+		this.rand = rand;
+		queue = new PieceQueue(randomizer, rand);
+	}
+
+	/**
+	 * Start the game from the beginning.
+	 */
+	public void start() {
+		Arrays.fill(rows, emptyRow);
+		Arrays.fill(cells, (byte) Constants.Type.Void.ordinal());
+		Arrays.fill(columnHeights, 0);
+		Arrays.fill(columnHoles, 0);
+		holes = 0;
+		hash = 0;
+		boardChanges++;
+		running = true;
+		finished = false;
+		gameOver = false;
+		score = 0;
+		level = 1;
+		linesEliminated = 0;
+		totalLines = 0;
+		pieces = 0;
+		ticks = 0;
+		delay = initialDelay;
+		queue.reset();
+		publish(Constants.Event.Started, 0, 0, 0, 0);
+		run();
+	}
+
+	/**
+	 * Advances the game one gravity tick. Spawns a new piece if the last one was locked, moves the falling piece down otherwise.
+	 * @return true if the falling piece moved down, false otherwise.
+	 */
+	public boolean tick() {
+		if (gameOver) {
+			return false;
+		}
+		ticks++;
+		if (finished) {
+			finished = false;
+			run();
+			return false;
+		}
+		return tryMove(Constants.Movement.Down);
+	}
+
+	/**
+	 * Make a move from the predefined moves in Constants.
+	 * @param movement The movement to make.
+	 * @return true if a move was made, false otherwise.
+	 */
+	public boolean step(Constants.Movement movement) {
+		if (gameOver || finished) {
+			return false;
+		}
+		if (recorder != null) {
+			recorder.record(ticks, movement);
+		}
+		return tryMove(movement);
+	}
+
+	/**
+	 * Is called in between every new block generated.
+	 */
+	private void run() {
+		checkAndRemoveLines();
+		generateNewPiece();
+		pieces++;
+		if (linesEliminated >= speedIncreaseInterval && level <= 10) {
+			delay -= delayDecrease;
+			linesEliminated = 0;
+			level++;
+			publish(Constants.Event.LevelUp, level, delay, 0, 0);
+		}
+		if (!fits(fallingPiece.getRotation(), fallingPiece.getY(), fallingPiece.getX())) {
+			gameOver = true;
+			publish(Constants.Event.GameOver, score, totalLines, pieces, 0);
+		}
+	}
+
+	/**
+	 * Check if there is any lines which is full, removes them and adds the appropiate score.
+	 * Done in a single pass from the bottom, copying every row that is kept down to its new place.
+	 * The hash is updated for every row that is removed or moved.
+	 */
+	void checkAndRemoveLines() {
+		int lines = 0;
+		int target = height - 1;
+		clearedRows = 0;
+		for (int i = height - 1; i >= 0; i--) {
+			if (rows[i] == fullRow) {
+				lines++;
+				clearedRows |= 1 << i;
+				hash ^= rowHash(i, rows[i]);
+			} else {
+				if (target != i) {
+					hash ^= rowHash(i, rows[i]) ^ rowHash(target, rows[i]);
+					rows[target] = rows[i];
+					System.arraycopy(cells, i * width, cells, target * width, width);
+				}
+				target--;
+			}
+		}
+		for (int i = target; i >= 0; i--) {
+			rows[i] = emptyRow;
+			Arrays.fill(cells, i * width, (i + 1) * width, (byte) Constants.Type.Void.ordinal());
+		}
+		totalLines += lines;
+		if (lines > 0) {
+			boardChanges++;
+			computeColumns();
+		}
+		if (lines == 1) {
+			linesEliminated++;
+			score += 40;
+		} else if (lines == 2) {
+			linesEliminated += 2;
+			score += 100;
+		} else if (lines == 3) {
+			linesEliminated += 3;
+			score += 300;
+		} else if (lines == 4) {
+			linesEliminated += 4;
+			score += 1200;
+		}
+		if (lines > 0) {
+			publish(Constants.Event.LinesCleared, lines, clearedRows, score, 0);
+		}
+	}
+
+	void generateNewPiece() {
+		fallingPiece.spawn(queue.next());
+		publish(Constants.Event.PieceSpawned, fallingPiece.getType().ordinal(), fallingPiece.getRotation(),
+				fallingPiece.getY(), fallingPiece.getX());
+	}
+
+	/**
+	 * Checks if the falling piece would be free on the board at a rotation and position.
+	 * @param rotation The rotation of the piece.
+	 * @param y The row of the top of the box of the piece.
+	 * @param x The column of the left of the box of the piece.
+	 * @return true if all blocks are within the board and empty, false otherwise.
+	 */
+	private boolean fits(int rotation, int y, int x) {
+		return fits(fallingPiece.getShape(), rotation, y, x);
+	}
+
+	/**
+	 * Checks if a shape would be free on the board at a rotation and position. Each row of the shape is one mask
+	 * shifted into place and tested against the row of the board, anything left or right of the board hits a wall bit.
+	 * @param shape The shape to check.
+	 * @param rotation The rotation of the shape.
+	 * @param y The row of the top of the box of the shape.
+	 * @param x The column of the left of the box of the shape.
+	 * @return true if all blocks are within the board and empty, false otherwise.
+	 */
+	boolean fits(Shape shape, int rotation, int y, int x) {
+		int shift = x + wall;
+		if (shift < 0) {
+			return false;
+		}
+		for (int i = 0; i < shape.getBoxSize(); i++) {
+			int mask = shape.getRowMask(rotation, i);
+			if (mask != 0
+					&& (y + i < 0 || y + i >= height || (rows[y + i] & (mask << shift)) != 0)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Try a move. It will not be completed if it is not possible or we have reaced the bottom of the board.
+	 * A rotation that collides is retried with each kick of the shape until one fits.
+	 * @param movement The movement to make.
+	 * @return true if a move was made, false otherwise.
+	 */
+	private boolean tryMove(Constants.Movement movement) {
+		int rotation = fallingPiece.getRotation();
+		int y = fallingPiece.getY();
+		int x = fallingPiece.getX();
+		switch (movement) {
+		case MoveLeft:
+			x--;
+			break;
+		case MoveRight:
+			x++;
+			break;
+		case RotateLeft:
+			return tryRotate(movement, 1, Shape.rotateLeft(rotation));
+		case RotateRight:
+			return tryRotate(movement, 0, Shape.rotateRight(rotation));
+		case Down:
+			y++;
+			break;
+		case HardDrop:
+			fallingPiece.set(rotation, y + dropDistance(fallingPiece.getShape(), rotation, y, x), x);
+			publish(Constants.Event.PieceMoved, movement.ordinal(), rotation, fallingPiece.getY(), x);
+			finished = true;
+			lock();
+			return true;
+		default:
+			return false;
+		}
+		if (fits(rotation, y, x)) {
+			fallingPiece.set(rotation, y, x);
+			publish(Constants.Event.PieceMoved, movement.ordinal(), rotation, y, x);
+			return true;
+		}
+		if (movement == Constants.Movement.Down) {
+			finished = true;
+			lock();
+		}
+		return false;
+	}
+
+	/**
+	 * Try to rotate the falling piece, using the first kick that fits.
+	 * @param movement RotateLeft or RotateRight.
+	 * @param direction 0 when rotating right, 1 when rotating left.
+	 * @param rotation The rotation after rotating.
+	 * @return true if the piece was rotated, false otherwise.
+	 */
+	private boolean tryRotate(Constants.Movement movement, int direction, int rotation) {
+		Shape shape = fallingPiece.getShape();
+		int from = fallingPiece.getRotation();
+		for (int i = 0; i < shape.getKicks(from, direction); i++) {
+			int y = fallingPiece.getY() + shape.getKickY(from, direction, i);
+			int x = fallingPiece.getX() + shape.getKickX(from, direction, i);
+			if (fits(rotation, y, x)) {
+				fallingPiece.set(rotation, y, x);
+				publish(Constants.Event.PieceRotated, movement.ordinal(), rotation, y, x);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if the falling piece has room to move one row down.
+	 * @return true if the falling piece can fall, false otherwise.
+	 */
+	public boolean canFall() {
+		return !gameOver && !finished
+				&& fits(fallingPiece.getRotation(), fallingPiece.getY() + 1, fallingPiece.getX());
+	}
+
+	/**
+	 * Writes the falling piece into the board.
+	 */
+	private void lock() {
+		byte type = (byte) fallingPiece.getType().ordinal();
+		for (int i = 0; i < fallingPiece.size(); i++) {
+			int y = fallingPiece.getBlockY(i);
+			int x = fallingPiece.getBlockX(i);
+			rows[y] |= 1 << (x + wall);
+			hash ^= zobrist[y * width + x];
+			cells[y * width + x] = type;
+			// A block above the column adds the empty cells it covers as holes, a block below the top fills a hole.
+			int top = height - columnHeights[x];
+			if (y < top) {
+				columnHoles[x] += top - y - 1;
+				holes += top - y - 1;
+				columnHeights[x] = height - y;
+			} else {
+				columnHoles[x]--;
+				holes--;
+			}
+		}
+		boardChanges++;
+		publish(Constants.Event.PieceLocked, type, fallingPiece.getRotation(), fallingPiece.getY(),
+				fallingPiece.getX());
+	}
+
+	/**
+	 * Returns the type of the locked block at a position.
+	 * @param y The row.
+	 * @param x The column.
+	 * @return The type of the block, Void if the cell is empty.
+	 */
+	public Constants.Type getCell(int y, int x) {
+		return types[cells[y * width + x]];
+	}
+
+	/**
+	 * Replaces the locked blocks of the board. Only meant for setting up benchmarks and tests.
+	 * @param rows The row masks, laid out as returned by getRow.
+	 * @param cells The types of the blocks as ordinals, row by row.
+	 */
+	void load(int[] rows, byte[] cells) {
+		System.arraycopy(rows, 0, this.rows, 0, height);
+		System.arraycopy(cells, 0, this.cells, 0, height * width);
+		hash = hash(rows, 0);
+		computeColumns();
+		boardChanges++;
+	}
+
+	/**
+	 * Computes the height and holes of every column from the rows, top down. Only needed when rows move.
+	 */
+	private void computeColumns() {
+		Arrays.fill(columnHeights, 0);
+		Arrays.fill(columnHoles, 0);
+		holes = 0;
+		int covered = 0;
+		for (int i = 0; i < height; i++) {
+			int filled = rows[i] & boardMask;
+			for (int tops = filled & ~covered; tops != 0; tops &= tops - 1) {
+				columnHeights[Integer.numberOfTrailingZeros(tops) - wall] = height - i;
+			}
+			covered |= filled;
+			int gaps = covered & ~filled;
+			holes += Integer.bitCount(gaps);
+			for (; gaps != 0; gaps &= gaps - 1) {
+				columnHoles[Integer.numberOfTrailingZeros(gaps) - wall]++;
+			}
+		}
+	}
+
+	/**
+	 * Returns how many rows a shape can fall before it lands. When every column of the shape is above the top of
+	 * the board in that column this is the smallest gap between them, at most one check per column of the box.
+	 * Only a shape slid under an overhang needs to be moved down row by row.
+	 * @param shape The shape, which must fit at the position.
+	 * @param rotation The rotation of the shape.
+	 * @param y The row of the top of the box of the shape.
+	 * @param x The column of the left of the box of the shape.
+	 * @return The number of rows.
+	 */
+	int dropDistance(Shape shape, int rotation, int y, int x) {
+		int distance = height;
+		for (int c = 0; c < shape.getBoxSize(); c++) {
+			int bottom = shape.getColumnBottom(rotation, c);
+			if (bottom < 0) {
+				continue;
+			}
+			int top = height - columnHeights[x + c];
+			if (y + bottom >= top) {
+				distance = 0;
+				while (fits(shape, rotation, y + distance + 1, x)) {
+					distance++;
+				}
+				return distance;
+			}
+			distance = Math.min(distance, top - y - bottom - 1);
+		}
+		return distance;
+	}
+
+	/**
+	 * Returns the xor of the Zobrist keys of the blocks in a row.
+	 * @param y The row.
+	 * @param row The mask of the row.
+	 * @return The hash of the row.
+	 */
+	private static long rowHash(int y, int row) {
+		long rowHash = 0;
+		int blocks = (row >>> wall) & ((1 << width) - 1);
+		while (blocks != 0) {
+			rowHash ^= zobrist[y * width + Integer.numberOfTrailingZeros(blocks)];
+			blocks &= blocks - 1;
+		}
+		return rowHash;
+	}
+
+	/**
+	 * Computes the Zobrist hash of a board from scratch, the hash an engine with these rows has.
+	 * @param rows The row masks of the board, laid out as returned by getRow.
+	 * @param from The index of the top row.
+	 * @return The hash of the board.
+	 */
+	static long hash(int[] rows, int from) {
+		long hash = 0;
+		for (int i = 0; i < height; i++) {
+			hash ^= rowHash(i, rows[from + i]);
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns the Zobrist hash of the locked blocks. Kept up to date as pieces are locked and lines removed,
+	 * so two boards with the same blocks have the same hash no matter how they were reached.
+	 * @return The hash of the board.
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Returns the rows removed by the last line clear, as they were numbered before the rows above moved down.
+	 * @return A mask with bit y set if row y was removed, 0 if the last piece cleared nothing.
+	 */
+	public int getClearedRows() {
+		return clearedRows;
+	}
+
+	/**
+	 * Returns the occupancy mask of a row. Column x is bit (3 + x), bits outside the board are always set.
+	 * @param y The row.
+	 * @return The row mask.
+	 */
+	public int getRow(int y) {
+		return rows[y];
+	}
+
+	/**
+	 * Returns the piece currently falling.
+	 * @return The falling piece.
+	 */
+	public Piece getFallingPiece() {
+		return fallingPiece;
+	}
+
+	/**
+	 * Returns true if the falling piece has been locked and a new one will be spawned on the next tick.
+	 * @return true if the falling piece is locked, false otherwise.
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Returns a boolean telling us whether the game is running or not.
+	 * @return true if game is running, false otherwise.
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Returns true if the game is over.
+	 * @return true if the game is over, false otherwise.
+	 */
+	public boolean isGameOver() {
+		return gameOver;
+	}
+
+	/**
+	 * Set state to gameover (Only used when it is gameover and we have sent a request to restart the game).
+	 * @param gameOver Set it to true in order to override the gameover state.
+	 */
+	public void setGameOver(boolean gameOver) {
+		this.gameOver = gameOver;
+	}
+
+	/**
+	 * Returns the current score.
+	 * @return The score.
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * Returns the current level.
+	 * @return The level.
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Returns the number of lines eliminated since the last level up.
+	 * @return The number of lines eliminated.
+	 */
+	public int getLinesEliminated() {
+		return linesEliminated;
+	}
+
+	/**
+	 * Returns the number of lines eliminated since the game started.
+	 * @return The number of lines eliminated.
+	 */
+	public int getTotalLines() {
+		return totalLines;
+	}
+
+	/**
+	 * Returns the number of pieces spawned since the game started, including the falling one.
+	 * @return The number of pieces.
+	 */
+	public int getPieces() {
+		return pieces;
+	}
+
+	/**
+	 * Returns a counter that changes every time the locked blocks change, that is when a piece is locked, lines are
+	 * removed or the game is restarted. Lets a view know when what it has drawn of the board is out of date.
+	 * @return The number of changes to the locked blocks.
+	 */
+	public int getBoardChanges() {
+		return boardChanges;
+	}
+
+	/**
+	 * Seeds the random generator picking the pieces. Call before start to play a reproducible game.
+	 * @param seed The seed.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+		rand.setSeed(seed);
+	}
+
+	/**
+	 * Returns the seed last set with setSeed.
+	 * @return The seed.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns how many rows the falling piece can fall before it lands, which is where its ghost is drawn.
+	 * @return The number of rows, 0 once the piece is locked.
+	 */
+	public int getDropDistance() {
+		if (gameOver || finished) {
+			return 0;
+		}
+		return dropDistance(fallingPiece.getShape(), fallingPiece.getRotation(), fallingPiece.getY(),
+				fallingPiece.getX());
+	}
+
+	/**
+	 * Returns the height of a column, the number of rows from the bottom up to and including its highest block.
+	 * @param x The column.
+	 * @return The height, 0 if the column is empty.
+	 */
+	public int getColumnHeight(int x) {
+		return columnHeights[x];
+	}
+
+	/**
+	 * Returns the number of empty cells in a column below its highest block.
+	 * @param x The column.
+	 * @return The number of holes.
+	 */
+	public int getColumnHoles(int x) {
+		return columnHoles[x];
+	}
+
+	/**
+	 * Returns the number of empty cells below the highest block of their column, on the whole board.
+	 * @return The number of holes.
+	 */
+	public int getHoles() {
+		return holes;
+	}
+
+	/**
+	 * Returns an upcoming piece.
+	 * @param i 0 for the piece after the falling one, up to PieceQueue.maxPreview - 1.
+	 * @return The type of the piece.
+	 */
+	public Constants.Type getPreview(int i) {
+		return queue.peek(i);
+	}
+
+	/**
+	 * Copies the upcoming pieces into an array, the piece after the falling one first.
+	 * @param into The array to copy to.
+	 * @param count The number of pieces, at most PieceQueue.maxPreview.
+	 * @return The number of pieces copied.
+	 */
+	public int getPreview(Constants.Type[] into, int count) {
+		return queue.peek(into, count);
+	}
+
+	/**
+	 * Returns the randomizer picking the pieces.
+	 * @return The randomizer.
+	 */
+	public Randomizer getRandomizer() {
+		return queue.getRandomizer();
+	}
+
+	/**
+	 * Returns the number of gravity ticks since the game started.
+	 * @return The number of ticks.
+	 */
+	public int getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * Sets the recorder every move is passed to, together with the tick it was made at.
+	 * @param recorder The recorder, or null to stop recording.
+	 */
+	public void setRecorder(ReplayRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Sets the bus every event of the game is published to.
+	 * @param events The bus, or null to publish nothing.
+	 */
+	public void setEvents(GameEventBus events) {
+		this.events = events;
+	}
+
+	/**
+	 * Returns the bus the events of the game are published to.
+	 * @return The bus, or null if nothing is published.
+	 */
+	public GameEventBus getEvents() {
+		return events;
+	}
+
+	/**
+	 * Publishes an event of the game at the current tick, if there is a bus.
+	 */
+	private void publish(Constants.Event event, int a, int b, int c, int d) {
+		if (events != null) {
+			events.publish(event, ticks, a, b, c, d);
+		}
+	}
+
+	/**
+	 * Returns the gravity delay in milliseconds for the current level.
+	 * @return The delay between two ticks.
+	 */
+	public int getDelay() {
+		return delay;
+	}
+
+	/**
+	 * Writes the whole state of the game to an array without allocating, for rollback. Everything that decides what
+	 * happens next is saved: the board, the falling piece, the counters, the upcoming pieces and the state of the
+	 * random generator, which must be a GameRandom. So is the write position of the recorder, if any, so that a
+	 * rollback takes back the moves recorded after the snapshot. The board change counter is not saved.
+	 * @param to The array to write to.
+	 * @param at The index of the first of snapshotSize ints to write.
+	 */
+	public void save(int[] to, int at) {
+		if (!(rand instanceof GameRandom)) {
+			throw new IllegalStateException("The random generator of the engine can not be saved");
+		}
+		if (fallingPiece.getShape() == null) {
+			throw new IllegalStateException("The game has not been started");
+		}
+		to[at] = (running ? 1 : 0) | (finished ? 2 : 0) | (gameOver ? 4 : 0);
+		to[at + 1] = score;
+		to[at + 2] = level;
+		to[at + 3] = linesEliminated;
+		to[at + 4] = totalLines;
+		to[at + 5] = clearedRows;
+		to[at + 6] = pieces;
+		to[at + 7] = delay;
+		to[at + 8] = ticks;
+		to[at + 9] = holes;
+		to[at + 10] = fallingPiece.getType().ordinal();
+		to[at + 11] = fallingPiece.getRotation();
+		to[at + 12] = fallingPiece.getY();
+		to[at + 13] = fallingPiece.getX();
+		saveLong(to, at + 14, seed);
+		saveLong(to, at + 16, hash);
+		saveLong(to, at + 18, ((GameRandom) rand).getState());
+		if (recorder != null) {
+			recorder.save(to, at + savedRecorder);
+		} else {
+			ReplayRecorder.saveNone(to, at + savedRecorder);
+		}
+		queue.save(to, at + savedQueue);
+		System.arraycopy(rows, 0, to, at + savedRows, height);
+		System.arraycopy(columnHeights, 0, to, at + savedHeights, width);
+		System.arraycopy(columnHoles, 0, to, at + savedHoles, width);
+		for (int i = 0, j = at + savedCells; i < cells.length; i += 4, j++) {
+			to[j] = (cells[i] & 0xFF) | (cells[i + 1] & 0xFF) << 8 | (cells[i + 2] & 0xFF) << 16 | cells[i + 3] << 24;
+		}
+	}
+
+	/**
+	 * Reads the whole state of the game back from an array written by save, of an engine with the same randomizer.
+	 * Counts as a change of the board.
+	 * @param from The array to read from.
+	 * @param at The index of the first of snapshotSize ints to read.
+	 */
+	public void restore(int[] from, int at) {
+		if (!(rand instanceof GameRandom)) {
+			throw new IllegalStateException("The random generator of the engine can not be restored");
+		}
+		int flags = from[at];
+		running = (flags & 1) != 0;
+		finished = (flags & 2) != 0;
+		gameOver = (flags & 4) != 0;
+		score = from[at + 1];
+		level = from[at + 2];
+		linesEliminated = from[at + 3];
+		totalLines = from[at + 4];
+		clearedRows = from[at + 5];
+		pieces = from[at + 6];
+		delay = from[at + 7];
+		ticks = from[at + 8];
+		holes = from[at + 9];
+		fallingPiece.spawn(types[from[at + 10]]);
+		fallingPiece.set(from[at + 11], from[at + 12], from[at + 13]);
+		seed = restoreLong(from, at + 14);
+		hash = restoreLong(from, at + 16);
+		((GameRandom) rand).setState(restoreLong(from, at + 18));
+		if (recorder != null) {
+			recorder.restore(from, at + savedRecorder);
+		}
+		queue.restore(from, at + savedQueue);
+		System.arraycopy(from, at + savedRows, rows, 0, height);
+		System.arraycopy(from, at + savedHeights, columnHeights, 0, width);
+		System.arraycopy(from, at + savedHoles, columnHoles, 0, width);
+		for (int i = 0, j = at + savedCells; i < cells.length; i += 4, j++) {
+			int packed = from[j];
+			cells[i] = (byte) packed;
+			cells[i + 1] = (byte) (packed >> 8);
+			cells[i + 2] = (byte) (packed >> 16);
+			cells[i + 3] = (byte) (packed >> 24);
+		}
+		boardChanges++;
+	}
+
+	private static void saveLong(int[] to, int at, long value) {
+		to[at] = (int) (value >>> 32);
+		to[at + 1] = (int) value;
+	}
+
+	private static long restoreLong(int[] from, int at) {
+		return ((long) from[at] << 32) | (from[at + 1] & 0xFFFFFFFFL);
+	}
+}
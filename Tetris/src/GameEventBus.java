@@ -0,0 +1,226 @@
+/**
+ * Delivers the events of a game to any number of listeners through a ring buffer allocated up front. The engine
+ * publishes by writing the event into the next slot, which never allocates and never waits for a listener. Every
+ * listener has a thread of its own that follows the ring and delivers everything published since it last looked as
+ * one batch, then sleeps until it is woken by flush, which the game loop calls once per logic step.
+ *
+ * A listener that falls more than the capacity of the ring behind loses the oldest events and is told how many.
+ * Events are published by one thread at a time, the one holding the monitor of the engine.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+public class GameEventBus {
+
+	// All events and movements.
+	private static final Constants.Event[] events = Constants.Event.values();
+	private static final Constants.Movement[] movements = Constants.Movement.values();
+	private static final Constants.Type[] types = Constants.Type.values();
+
+	// Every slot is a stamp, the sequence number of the event in it or -1 while it is written, followed by the event
+	// packed into three longs: the kind and the tick, then two arguments in each.
+	private static final int slotSize = 4;
+
+	// Fields.
+	private final AtomicLongArray ring;
+	private final int mask;
+	private final AtomicLong cursor = new AtomicLong();
+	private long flushed;
+	private volatile Subscription[] subscriptions = new Subscription[0];
+
+	/**
+	 * Constructor for object GameEventBus.
+	 * @param capacity The number of events kept in the ring, a power of two.
+	 */
+	public GameEventBus(int capacity) {
+		if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("The capacity must be a power of two, not " + capacity);
+		}
+		ring = new AtomicLongArray(capacity * slotSize);
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Publishes an event. Listeners waiting for events are not woken until flush, so everything published in between
+	 * is delivered as one batch, unless half the ring fills up first.
+	 * @param event The kind of event.
+	 * @param tick The tick of the engine.
+	 * @param a The first argument, see GameListener.
+	 * @param b The second argument.
+	 * @param c The third argument.
+	 * @param d The fourth argument.
+	 */
+	void publish(Constants.Event event, int tick, int a, int b, int c, int d) {
+		long sequence = cursor.get();
+		int slot = (int) (sequence & mask) * slotSize;
+		ring.set(slot, -1);
+		ring.set(slot + 1, (long) event.ordinal() << 32 | (tick & 0xFFFFFFFFL));
+		ring.set(slot + 2, (long) a << 32 | (b & 0xFFFFFFFFL));
+		ring.set(slot + 3, (long) c << 32 | (d & 0xFFFFFFFFL));
+		ring.set(slot, sequence);
+		cursor.set(sequence + 1);
+		if (sequence + 1 - flushed > mask / 2) {
+			flush();
+		}
+	}
+
+	/**
+	 * Wakes the listeners waiting for the events published since the last flush. Call with the monitor of the engine
+	 * held, once per step of the game loop or whenever events should be delivered.
+	 */
+	public void flush() {
+		flushed = cursor.get();
+		Subscription[] subscriptions = this.subscriptions;
+		for (int i = 0; i < subscriptions.length; i++) {
+			if (subscriptions[i].waiting) {
+				LockSupport.unpark(subscriptions[i].thread);
+			}
+		}
+	}
+
+	/**
+	 * Adds a listener. It is sent the events published from now on. May be called from any thread.
+	 * @param listener The listener.
+	 */
+	public synchronized void subscribe(GameListener listener) {
+		Subscription subscription = new Subscription(listener, cursor.get());
+		Subscription[] larger = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+		larger[subscriptions.length] = subscription;
+		subscriptions = larger;
+		subscription.thread.start();
+	}
+
+	/**
+	 * Removes a listener after delivering what was already published to it, and waits for its thread to finish.
+	 * May be called from any thread but the thread of the listener.
+	 * @param listener The listener.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public void unsubscribe(GameListener listener) throws InterruptedException {
+		Subscription subscription = null;
+		synchronized (this) {
+			for (int i = 0; i < subscriptions.length; i++) {
+				if (subscriptions[i].listener == listener) {
+					subscription = subscriptions[i];
+					Subscription[] smaller = new Subscription[subscriptions.length - 1];
+					System.arraycopy(subscriptions, 0, smaller, 0, i);
+					System.arraycopy(subscriptions, i + 1, smaller, i, smaller.length - i);
+					subscriptions = smaller;
+					break;
+				}
+			}
+		}
+		if (subscription != null) {
+			subscription.running = false;
+			LockSupport.unpark(subscription.thread);
+			subscription.thread.join();
+		}
+	}
+
+	/**
+	 * Returns the number of events published.
+	 * @return The number of events.
+	 */
+	public long getPublished() {
+		return cursor.get();
+	}
+
+	/**
+	 * The thread of one listener, following the ring.
+	 */
+	private final class Subscription implements Runnable {
+
+		private final GameListener listener;
+		private final Thread thread;
+		private volatile boolean running = true;
+		private volatile boolean waiting;
+		private long next;
+
+		Subscription(GameListener listener, long next) {
+			this.listener = listener;
+			this.next = next;
+			thread = new Thread(this, "game-events");
+			thread.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			int capacity = mask + 1;
+			while (true) {
+				long available = cursor.get();
+				if (available == next) {
+					if (!running) {
+						return;
+					}
+					// Say so before looking again, so a flush either is seen here or sees the flag.
+					waiting = true;
+					if (cursor.get() == next && running) {
+						LockSupport.park(this);
+					}
+					waiting = false;
+					continue;
+				}
+				if (available - next > capacity) {
+					listener.missed(available - capacity - next);
+					next = available - capacity;
+				}
+				for (; next < available; next++) {
+					int slot = (int) (next & mask) * slotSize;
+					long kind = ring.get(slot + 1);
+					long ab = ring.get(slot + 2);
+					long cd = ring.get(slot + 3);
+					if (ring.get(slot) != next) {
+						// Overwritten while reading, the publisher is a whole ring ahead. Skip to the oldest event
+						// it can not be writing over yet.
+						long resume = cursor.get() - capacity + 1;
+						listener.missed(resume - next);
+						next = resume - 1;
+						continue;
+					}
+					deliver(listener, events[(int) (kind >>> 32)], (int) kind, (int) (ab >>> 32), (int) ab,
+							(int) (cd >>> 32), (int) cd);
+				}
+				listener.endOfBatch();
+			}
+		}
+	}
+
+	/**
+	 * Calls the method of a listener for an event.
+	 */
+	private static void deliver(GameListener listener, Constants.Event event, int tick, int a, int b, int c, int d) {
+		switch (event) {
+		case Started:
+			listener.gameStarted(tick);
+			break;
+		case PieceSpawned:
+			listener.pieceSpawned(tick, types[a], b, c, d);
+			break;
+		case PieceMoved:
+			listener.pieceMoved(tick, movements[a], b, c, d);
+			break;
+		case PieceRotated:
+			listener.pieceRotated(tick, movements[a], b, c, d);
+			break;
+		case PieceLocked:
+			listener.pieceLocked(tick, types[a], b, c, d);
+			break;
+		case LinesCleared:
+			listener.linesCleared(tick, a, b, c);
+			break;
+		case LevelUp:
+			listener.levelUp(tick, a, b);
+			break;
+		case GameOver:
+			listener.gameOver(tick, a, b, c);
+			break;
+		default:
+			break;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ * Receives the events of a game from a GameEventBus, on a thread of its own and never on the thread playing the
+ * game. Every method does nothing unless overridden, so a listener only implements the events it cares about.
+ * Every event carries the gravity tick of the engine it happened at.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+public interface GameListener {
+
+	/**
+	 * A game started.
+	 * @param tick The tick, always 0.
+	 */
+	default void gameStarted(int tick) {
+	}
+
+	/**
+	 * A new piece appeared at the top of the board.
+	 * @param tick The tick.
+	 * @param type The type of the piece.
+	 * @param rotation The rotation of the piece.
+	 * @param y The row of the top of the box of the piece.
+	 * @param x The column of the left of the box of the piece.
+	 */
+	default void pieceSpawned(int tick, Constants.Type type, int rotation, int y, int x) {
+	}
+
+	/**
+	 * The falling piece moved left, right or down, by a move or by gravity, or was hard dropped.
+	 * @param tick The tick.
+	 * @param movement The movement.
+	 * @param rotation The rotation of the piece.
+	 * @param y The row of the top of the box of the piece after the move.
+	 * @param x The column of the left of the box of the piece after the move.
+	 */
+	default void pieceMoved(int tick, Constants.Movement movement, int rotation, int y, int x) {
+	}
+
+	/**
+	 * The falling piece rotated, possibly kicked to another position.
+	 * @param tick The tick.
+	 * @param movement RotateLeft or RotateRight.
+	 * @param rotation The rotation of the piece after the move.
+	 * @param y The row of the top of the box of the piece after the move.
+	 * @param x The column of the left of the box of the piece after the move.
+	 */
+	default void pieceRotated(int tick, Constants.Movement movement, int rotation, int y, int x) {
+	}
+
+	/**
+	 * The falling piece was locked into the board.
+	 * @param tick The tick.
+	 * @param type The type of the piece.
+	 * @param rotation The rotation of the piece.
+	 * @param y The row of the top of the box of the piece.
+	 * @param x The column of the left of the box of the piece.
+	 */
+	default void pieceLocked(int tick, Constants.Type type, int rotation, int y, int x) {
+	}
+
+	/**
+	 * Full lines were removed.
+	 * @param tick The tick.
+	 * @param count The number of lines, 1 to 4.
+	 * @param rows The rows that were full, bit y for row y, before they were removed.
+	 * @param score The score after the lines were counted.
+	 */
+	default void linesCleared(int tick, int count, int rows, int score) {
+	}
+
+	/**
+	 * The game went up a level.
+	 * @param tick The tick.
+	 * @param level The new level.
+	 * @param delay The new gravity delay in milliseconds.
+	 */
+	default void levelUp(int tick, int level, int delay) {
+	}
+
+	/**
+	 * The game is over.
+	 * @param tick The tick.
+	 * @param score The final score.
+	 * @param lines The lines removed in the game.
+	 * @param pieces The pieces spawned in the game.
+	 */
+	default void gameOver(int tick, int score, int lines, int pieces) {
+	}
+
+	/**
+	 * Called after the last event that was available when a batch of events was delivered. A good time to flush
+	 * anything buffered.
+	 */
+	default void endOfBatch() {
+	}
+
+	/**
+	 * Called when the listener fell so far behind that the ring overwrote events before they were delivered.
+	 * @param events The number of events lost.
+	 */
+	default void missed(long events) {
+	}
+}
@@ -0,0 +1,218 @@
+/**
+ * The game loop. Runs on its own thread, advances the engine in fixed logic steps measured with System.nanoTime and
+ * renders the board actively through a BufferStrategy of its window, paced to a fixed frame rate.
+ *
+ * Gravity is accumulated per logic step, so a row can take any number of steps at low levels and several rows can
+ * fall in one step at high levels. Frames are drawn with the falling piece interpolated between rows.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.swing.SwingUtilities;
+
+public class GameLoop implements Runnable {
+
+	// Length of a logic step and of a frame in nanoseconds.
+	private static final long stepNanos = 1000000000L / 120;
+	private static final long frameNanos = 1000000000L / 60;
+
+	// Never run more than this many logic steps in a row, so the loop can catch up after a stall without freezing.
+	private static final int maxStepsPerFrame = 30;
+
+	// Fields.
+	private final Board board;
+	private final GameEngine engine;
+	private Thread thread;
+	private volatile boolean running;
+	private long gravityNanos;
+	private volatile BufferStrategy strategy;
+	private Window window;
+	private final GameMetrics metrics;
+
+	/**
+	 * Constructor for object GameLoop.
+	 * @param board The board to update and render.
+	 */
+	public GameLoop(Board board) {
+		this.board = board;
+		this.engine = board.getEngine();
+		this.metrics = board.getMetrics();
+	}
+
+	/**
+	 * Starts the loop thread unless it is already running.
+	 */
+	public void start() {
+		synchronized (engine) {
+			gravityNanos = 0;
+		}
+		synchronized (this) {
+			if (running) {
+				return;
+			}
+			running = true;
+			thread = new Thread(this, "game-loop");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Returns how far gravity has come towards the next tick, the phase of the gravity timer.
+	 * Must be called while holding the monitor of the engine.
+	 * @return The nanoseconds accumulated since the last tick.
+	 */
+	long getGravityNanos() {
+		return gravityNanos;
+	}
+
+	/**
+	 * Sets the phase of the gravity timer, as returned by getGravityNanos.
+	 * Must be called while holding the monitor of the engine.
+	 * @param gravityNanos The nanoseconds accumulated since the last tick.
+	 */
+	void setGravityNanos(long gravityNanos) {
+		this.gravityNanos = gravityNanos;
+	}
+
+	/**
+	 * Stops the loop thread and waits for it to finish.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public void stop() throws InterruptedException {
+		Thread thread;
+		synchronized (this) {
+			running = false;
+			thread = this.thread;
+		}
+		if (thread != null) {
+			thread.join();
+		}
+	}
+
+	/**
+	 * Returns true if the loop renders through a BufferStrategy, false while it still falls back to Swing repaints.
+	 * @return true if rendering actively, false otherwise.
+	 */
+	public boolean isActive() {
+		return strategy != null;
+	}
+
+	@Override
+	public void run() {
+		long start = System.nanoTime();
+		long step = 0;
+		long nextFrame = start;
+		while (running) {
+			// Run every logic step that is due, measuring how late each one is.
+			long now = System.nanoTime();
+			int steps = 0;
+			while (start + (step + 1) * stepNanos <= now && steps < maxStepsPerFrame) {
+				step++;
+				steps++;
+				long jitter = now - (start + step * stepNanos);
+				long stepStart = System.nanoTime();
+				update(start + step * stepNanos);
+				metrics.step(System.nanoTime() - stepStart, jitter);
+			}
+			if (steps == maxStepsPerFrame) {
+				// Too far behind, drop the missed steps instead of trying to catch up.
+				step = (now - start) / stepNanos;
+			}
+
+			if (now >= nextFrame) {
+				long frameStart = System.nanoTime();
+				double alpha = (double) (frameStart - start - step * stepNanos) / stepNanos;
+				if (render(Math.min(1, alpha))) {
+					metrics.frame(frameStart, System.nanoTime());
+				}
+				nextFrame += frameNanos;
+				if (nextFrame < now) {
+					nextFrame = now + frameNanos;
+				}
+			}
+
+			// Sleep until the next logic step or frame, whichever comes first.
+			long wake = Math.min(nextFrame, start + (step + 1) * stepNanos);
+			long sleep = wake - System.nanoTime();
+			if (sleep > 0) {
+				LockSupport.parkNanos(sleep);
+			}
+		}
+	}
+
+	/**
+	 * One logic step. Handles the input, adds the step to the gravity and moves the piece down once for every full
+	 * gravity delay.
+	 * @param now The time the step was scheduled at, in System.nanoTime.
+	 */
+	private void update(long now) {
+		synchronized (engine) {
+			board.handleInput(now);
+			if (!engine.isGameOver()) {
+				gravityNanos += stepNanos;
+				long delayNanos = engine.getDelay() * 1000000L;
+				while (gravityNanos >= delayNanos && !engine.isGameOver()) {
+					gravityNanos -= delayNanos;
+					// The delay ran out gravityNanos before the step was due.
+					metrics.gravity(System.nanoTime() - (now - gravityNanos));
+					board.tick();
+					delayNanos = engine.getDelay() * 1000000L;
+				}
+			}
+			// Everything that happened in the step goes to the listeners as one batch.
+			board.getEvents().flush();
+		}
+	}
+
+	/**
+	 * Renders a frame through the BufferStrategy of the window, once it is displayable.
+	 * @param alpha How far the loop is into the current logic step, 0 to 1.
+	 * @return true if a frame was rendered, false if the board still repaints itself through Swing.
+	 */
+	private boolean render(double alpha) {
+		if (strategy == null && !createStrategy()) {
+			return false;
+		}
+		synchronized (engine) {
+			double fraction = Math.min(1, (gravityNanos + alpha * stepNanos) / (engine.getDelay() * 1000000.0));
+			do {
+				do {
+					Graphics g = strategy.getDrawGraphics();
+					Point offset = SwingUtilities.convertPoint(board, 0, 0, window);
+					g.translate(offset.x, offset.y);
+					g.setClip(0, 0, board.getWidth(), board.getHeight());
+					board.render(g, fraction);
+					g.dispose();
+				} while (strategy.contentsRestored());
+				strategy.show();
+			} while (strategy.contentsLost());
+		}
+		Toolkit.getDefaultToolkit().sync();
+		return true;
+	}
+
+	/**
+	 * Creates the BufferStrategy of the window of the board, if it is displayable yet.
+	 * @return true if there is a strategy to render with, false otherwise.
+	 */
+	private boolean createStrategy() {
+		Window window = SwingUtilities.getWindowAncestor(board);
+		if (window == null || !window.isDisplayable() || !window.isShowing()) {
+			return false;
+		}
+		window.setIgnoreRepaint(true);
+		board.setIgnoreRepaint(true);
+		window.createBufferStrategy(2);
+		this.window = window;
+		this.strategy = window.getBufferStrategy();
+		return true;
+	}
+}
@@ -0,0 +1,301 @@
+/**
+ * Histograms of how the game runs on this machine: the time a logic step takes, how late steps and gravity ticks
+ * happen compared to when they were due, how long a frame takes to paint and how long a key press takes to show up
+ * on screen. Exposed as an MBean and written to a file on request.
+ *
+ * Recording never allocates. The histograms are guarded by the monitor of this object, which the game loop, the
+ * event dispatch thread and JMX only hold for a moment each.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class GameMetrics implements GameMetricsMBean {
+
+	// Fields.
+	private final GameEngine engine;
+	private final Histogram tickTime = new Histogram();
+	private final Histogram stepJitter = new Histogram();
+	private final Histogram gravityJitter = new Histogram();
+	private final Histogram paintTime = new Histogram();
+	private final Histogram inputLatency = new Histogram();
+	// Time of the oldest key press not yet handled, 0 if none. Set by the event dispatch thread.
+	private final AtomicLong pendingKey = new AtomicLong();
+	// Time of the oldest key press handled by a logic step but not yet on screen, 0 if none, and when it was handled.
+	private long handledKey;
+	private long handledAt;
+	private long gameStart;
+
+	/**
+	 * Constructor for object GameMetrics.
+	 * @param engine The game measured, for the pieces and lines per minute.
+	 */
+	public GameMetrics(GameEngine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server as tetris:type=GameMetrics.
+	 */
+	public void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+					new ObjectName("tetris:type=GameMetrics"));
+		} catch (JMException e) {
+			System.err.println("Could not register the metrics: " + e);
+		}
+	}
+
+	/**
+	 * Records that a game started, for the rates.
+	 * @param now The time, in System.nanoTime.
+	 */
+	public synchronized void gameStarted(long now) {
+		gameStart = now;
+	}
+
+	/**
+	 * Records a logic step.
+	 * @param duration How long the step took, in nanoseconds.
+	 * @param jitter How late the step started, in nanoseconds.
+	 */
+	public synchronized void step(long duration, long jitter) {
+		tickTime.record(duration);
+		stepJitter.record(jitter);
+	}
+
+	/**
+	 * Records a gravity tick.
+	 * @param jitter How long after the gravity delay ran out the tick was made, in nanoseconds.
+	 */
+	public synchronized void gravity(long jitter) {
+		gravityJitter.record(jitter);
+	}
+
+	/**
+	 * Records a key press. Only the oldest press waiting for a frame is kept. May be called from any thread.
+	 * @param time When the key was pressed, in System.nanoTime.
+	 */
+	public void keyPressed(long time) {
+		pendingKey.compareAndSet(0, time);
+	}
+
+	/**
+	 * Records that a logic step is handling the input, so the key presses recorded so far, which are queued already,
+	 * can show up in the frames painted after it. Must be called while holding the monitor of the engine.
+	 * @param now The time, in System.nanoTime.
+	 */
+	public void inputHandled(long now) {
+		long key = pendingKey.getAndSet(0);
+		synchronized (this) {
+			if (key != 0 && handledKey == 0) {
+				handledKey = key;
+				handledAt = now;
+			}
+		}
+	}
+
+	/**
+	 * Records a painted frame, and the latency of the handled key press waiting for it. A frame that started before the
+	 * press was handled does not show it.
+	 * @param start When painting started, after taking the monitor of the engine, in System.nanoTime.
+	 * @param end When the frame was shown, in System.nanoTime.
+	 */
+	public synchronized void frame(long start, long end) {
+		paintTime.record(end - start);
+		if (handledKey != 0 && handledAt <= start) {
+			inputLatency.record(end - handledKey);
+			handledKey = 0;
+		}
+	}
+
+	@Override
+	public synchronized void reset() {
+		tickTime.clear();
+		stepJitter.clear();
+		gravityJitter.clear();
+		paintTime.clear();
+		inputLatency.clear();
+		handledKey = 0;
+	}
+
+	@Override
+	public void dump(String file) throws IOException {
+		try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+			out.println("histogram,count,mean_us,p50_us,p90_us,p99_us,p999_us,max_us");
+			synchronized (this) {
+				dump(out, "tick_time", tickTime);
+				dump(out, "step_jitter", stepJitter);
+				dump(out, "gravity_jitter", gravityJitter);
+				dump(out, "paint_time", paintTime);
+				dump(out, "input_latency", inputLatency);
+			}
+			out.println(String.format(Locale.ROOT, "pieces_per_minute,%.2f", getPiecesPerMinute()));
+			out.println(String.format(Locale.ROOT, "lines_per_minute,%.2f", getLinesPerMinute()));
+		}
+	}
+
+	private static void dump(PrintWriter out, String name, Histogram histogram) {
+		out.println(String.format(Locale.ROOT, "%s,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f", name, histogram.getCount(),
+				histogram.getMean() / 1000, histogram.getPercentile(50) / 1000.0,
+				histogram.getPercentile(90) / 1000.0, histogram.getPercentile(99) / 1000.0,
+				histogram.getPercentile(99.9) / 1000.0, histogram.getMax() / 1000.0));
+	}
+
+	private synchronized double micros(Histogram histogram, double percentile) {
+		return (percentile < 0 ? histogram.getMean() : histogram.getPercentile(percentile)) / 1000.0;
+	}
+
+	private synchronized double maxMicros(Histogram histogram) {
+		return histogram.getMax() / 1000.0;
+	}
+
+	/**
+	 * Returns a count of something the engine counts per minute since the game started.
+	 */
+	private double perMinute(int count) {
+		long start;
+		synchronized (this) {
+			start = gameStart;
+		}
+		double minutes = (System.nanoTime() - start) / 60e9;
+		return start == 0 || minutes <= 0 ? 0 : count / minutes;
+	}
+
+	@Override
+	public synchronized long getTicks() {
+		return tickTime.getCount();
+	}
+
+	@Override
+	public double getTickTimeMean() {
+		return micros(tickTime, -1);
+	}
+
+	@Override
+	public double getTickTimeP50() {
+		return micros(tickTime, 50);
+	}
+
+	@Override
+	public double getTickTimeP99() {
+		return micros(tickTime, 99);
+	}
+
+	@Override
+	public double getTickTimeMax() {
+		return maxMicros(tickTime);
+	}
+
+	@Override
+	public double getStepJitterMean() {
+		return micros(stepJitter, -1);
+	}
+
+	@Override
+	public double getStepJitterP50() {
+		return micros(stepJitter, 50);
+	}
+
+	@Override
+	public double getStepJitterP99() {
+		return micros(stepJitter, 99);
+	}
+
+	@Override
+	public double getStepJitterMax() {
+		return maxMicros(stepJitter);
+	}
+
+	@Override
+	public double getGravityJitterMean() {
+		return micros(gravityJitter, -1);
+	}
+
+	@Override
+	public double getGravityJitterP50() {
+		return micros(gravityJitter, 50);
+	}
+
+	@Override
+	public double getGravityJitterP99() {
+		return micros(gravityJitter, 99);
+	}
+
+	@Override
+	public double getGravityJitterMax() {
+		return maxMicros(gravityJitter);
+	}
+
+	@Override
+	public synchronized long getFrames() {
+		return paintTime.getCount();
+	}
+
+	@Override
+	public double getPaintTimeMean() {
+		return micros(paintTime, -1);
+	}
+
+	@Override
+	public double getPaintTimeP50() {
+		return micros(paintTime, 50);
+	}
+
+	@Override
+	public double getPaintTimeP99() {
+		return micros(paintTime, 99);
+	}
+
+	@Override
+	public double getPaintTimeMax() {
+		return maxMicros(paintTime);
+	}
+
+	@Override
+	public synchronized long getKeyPresses() {
+		return inputLatency.getCount();
+	}
+
+	@Override
+	public double getInputLatencyMean() {
+		return micros(inputLatency, -1);
+	}
+
+	@Override
+	public double getInputLatencyP50() {
+		return micros(inputLatency, 50);
+	}
+
+	@Override
+	public double getInputLatencyP99() {
+		return micros(inputLatency, 99);
+	}
+
+	@Override
+	public double getInputLatencyMax() {
+		return maxMicros(inputLatency);
+	}
+
+	@Override
+	public double getPiecesPerMinute() {
+		synchronized (engine) {
+			return perMinute(engine.getPieces());
+		}
+	}
+
+	@Override
+	public double getLinesPerMinute() {
+		synchronized (engine) {
+			return perMinute(engine.getTotalLines());
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ * The management interface of GameMetrics. Times are in microseconds, rates are since the current game started.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+public interface GameMetricsMBean {
+
+	long getTicks();
+
+	double getTickTimeMean();
+
+	double getTickTimeP50();
+
+	double getTickTimeP99();
+
+	double getTickTimeMax();
+
+	double getStepJitterMean();
+
+	double getStepJitterP50();
+
+	double getStepJitterP99();
+
+	double getStepJitterMax();
+
+	double getGravityJitterMean();
+
+	double getGravityJitterP50();
+
+	double getGravityJitterP99();
+
+	double getGravityJitterMax();
+
+	long getFrames();
+
+	double getPaintTimeMean();
+
+	double getPaintTimeP50();
+
+	double getPaintTimeP99();
+
+	double getPaintTimeMax();
+
+	long getKeyPresses();
+
+	double getInputLatencyMean();
+
+	double getInputLatencyP50();
+
+	double getInputLatencyP99();
+
+	double getInputLatencyMax();
+
+	double getPiecesPerMinute();
+
+	double getLinesPerMinute();
+
+	/**
+	 * Forgets everything recorded so far.
+	 */
+	void reset();
+
+	/**
+	 * Writes a report of all histograms to a file.
+	 * @param file The file to write.
+	 * @throws java.io.IOException If the file cannot be written.
+	 */
+	void dump(String file) throws java.io.IOException;
+}
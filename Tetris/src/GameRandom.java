@@ -0,0 +1,65 @@
+/**
+ * The random generator of a game. Draws exactly the same numbers as java.util.Random for the same seed, but keeps its
+ * state in a plain field that can be read and set, so a game can be saved and restored without allocating.
+ * Not thread safe, and nextGaussian is not part of the state.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.Random;
+
+public class GameRandom extends Random {
+
+	// Added to suppress warning.
+	private static final long serialVersionUID = 1L;
+
+	// The linear congruential generator of java.util.Random.
+	private static final long multiplier = 0x5DEECE66DL;
+	private static final long addend = 0xBL;
+	private static final long mask = (1L << 48) - 1;
+
+	// No initializer, the constructor of Random sets it through setSeed before the fields of this class are set.
+	private long state;
+
+	/**
+	 * Constructor for object GameRandom with a seed that differs for every call.
+	 */
+	public GameRandom() {
+		super();
+	}
+
+	/**
+	 * Constructor for object GameRandom.
+	 * @param seed The seed.
+	 */
+	public GameRandom(long seed) {
+		super(seed);
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		state = (seed ^ multiplier) & mask;
+	}
+
+	@Override
+	protected int next(int bits) {
+		state = (state * multiplier + addend) & mask;
+		return (int) (state >>> (48 - bits));
+	}
+
+	/**
+	 * Returns the internal state, which is not the seed.
+	 * @return The state.
+	 */
+	public long getState() {
+		return state;
+	}
+
+	/**
+	 * Sets the internal state, as returned by getState.
+	 * @param state The state.
+	 */
+	public void setState(long state) {
+		this.state = state & mask;
+	}
+}
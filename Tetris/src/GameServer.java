@@ -0,0 +1,160 @@
+/**
+ * Headless server hosting independent games over the binary Protocol. The server is authoritative: every move a client
+ * sends is made on the engine of its session and the client is told whether it was accepted. Connections are spread
+ * over one ServerWorker per core, each serving its share on a non-blocking selector.
+ *
+ * Usage: java GameServer [--port N] [--threads N]
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
+
+public class GameServer implements Runnable {
+
+	// Fields.
+	private final ServerSocketChannel server;
+	private final ServerWorker[] workers;
+	private final Thread[] threads;
+	private Thread acceptor;
+	private volatile boolean running;
+
+	/**
+	 * Constructor for object GameServer. Binds the port but does not accept connections until started.
+	 * @param port The port to listen on, 0 for any free port.
+	 * @param threads The number of worker threads.
+	 * @throws IOException If the port cannot be bound.
+	 */
+	public GameServer(int port, int threads) throws IOException {
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port), 1024);
+		workers = new ServerWorker[threads];
+		this.threads = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new ServerWorker();
+		}
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 * @return The port.
+	 */
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * Starts the workers and the thread accepting connections.
+	 */
+	public void start() {
+		running = true;
+		for (int i = 0; i < workers.length; i++) {
+			threads[i] = new Thread(workers[i], "server-worker-" + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		acceptor = new Thread(this, "server-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Stops accepting, closes all connections and waits for the threads to finish.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public void stop() throws InterruptedException {
+		running = false;
+		try {
+			server.close();
+		} catch (IOException e) {
+			// Closing anyway.
+		}
+		for (ServerWorker worker : workers) {
+			worker.stop();
+		}
+		acceptor.join();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+	}
+
+	/**
+	 * Returns the number of connected clients.
+	 * @return The number of sessions.
+	 */
+	public int getSessions() {
+		int sessions = 0;
+		for (ServerWorker worker : workers) {
+			sessions += worker.getSessions();
+		}
+		return sessions;
+	}
+
+	/**
+	 * Returns the lag of the falls of all games over the last whole second, how long after they were due they ran.
+	 * @return A new histogram of the lag in nanoseconds.
+	 */
+	public Histogram getTickLag() {
+		Histogram lag = new Histogram();
+		for (ServerWorker worker : workers) {
+			worker.addLag(lag);
+		}
+		return lag;
+	}
+
+	/**
+	 * Accepts connections, blocking, and hands them to the workers in turn.
+	 */
+	@Override
+	public void run() {
+		int next = 0;
+		while (running) {
+			try {
+				SocketChannel channel = server.accept();
+				workers[next].add(channel);
+				next = (next + 1) % workers.length;
+			} catch (IOException e) {
+				if (running) {
+					System.err.println("Accept failed: " + e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Main method. Serves until the process is killed, printing the number of sessions and the tick lag every ten
+	 * seconds.
+	 * @param args Options, see the class comment.
+	 * @throws Exception If the server cannot be started.
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = 7777;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "--port":
+				port = Integer.parseInt(args[i + 1]);
+				break;
+			case "--threads":
+				threads = Integer.parseInt(args[i + 1]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		GameServer server = new GameServer(port, threads);
+		server.start();
+		System.out.println("Listening on port " + server.getPort() + " with " + threads + " workers");
+		while (true) {
+			Thread.sleep(10000);
+			Histogram lag = server.getTickLag();
+			System.out.println(String.format(Locale.ROOT, "%d sessions, %d falls/s, lag us p50 %.1f p99 %.1f max %.1f",
+					server.getSessions(), lag.getCount(), lag.getPercentile(50) / 1e3, lag.getPercentile(99) / 1e3,
+					lag.getMax() / 1e3));
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * One finished game in the Leaderboard.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+public class HighScore {
+
+	// Fields.
+	private final long number;
+	private final int score;
+	private final int level;
+	private final int lines;
+	private final int pieces;
+	private final long time;
+	private final long seed;
+
+	/**
+	 * Constructor for object HighScore.
+	 * @param number The number of the record in the log, in the order the games were added.
+	 * @param score The score.
+	 * @param level The level reached.
+	 * @param lines The number of lines cleared.
+	 * @param pieces The number of pieces played.
+	 * @param time When the game ended, in milliseconds since the epoch.
+	 * @param seed The seed of the pieces, to find its replay.
+	 */
+	public HighScore(long number, int score, int level, int lines, int pieces, long time, long seed) {
+		this.number = number;
+		this.score = score;
+		this.level = level;
+		this.lines = lines;
+		this.pieces = pieces;
+		this.time = time;
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns the number of the record in the log.
+	 * @return The record number.
+	 */
+	public long getNumber() {
+		return number;
+	}
+
+	/**
+	 * Returns the score.
+	 * @return The score.
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * Returns the level reached.
+	 * @return The level.
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Returns the number of lines cleared.
+	 * @return The number of lines.
+	 */
+	public int getLines() {
+		return lines;
+	}
+
+	/**
+	 * Returns the number of pieces played.
+	 * @return The number of pieces.
+	 */
+	public int getPieces() {
+		return pieces;
+	}
+
+	/**
+	 * Returns when the game ended.
+	 * @return The time in milliseconds since the epoch.
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Returns the seed of the pieces.
+	 * @return The seed.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Counts of recorded values in buckets of about 3 percent width, for percentiles of latencies without keeping the
+ * values. Values below 64 get a bucket each, above that every power of two is split into 32 buckets. Recording never
+ * allocates and a histogram is not thread safe, so give every thread its own and add them up afterwards.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+public class Histogram {
+
+	// Buckets per power of two, as a number of bits.
+	private static final int subBits = 5;
+	private static final int subBuckets = 1 << subBits;
+	private static final int buckets = (64 - subBits) * subBuckets;
+
+	// Fields.
+	private final long[] counts = new long[buckets];
+	private long count;
+	private long total;
+	private long max;
+
+	/**
+	 * Records a value.
+	 * @param value The value, negative values are recorded as 0.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts[index(value)]++;
+		count++;
+		total += value;
+		if (value > max) {
+			max = value;
+		}
+	}
+
+	/**
+	 * Adds all values recorded in another histogram to this one.
+	 * @param other The histogram to add.
+	 */
+	public void add(Histogram other) {
+		for (int i = 0; i < buckets; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		total += other.total;
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * Forgets all recorded values.
+	 */
+	public void clear() {
+		java.util.Arrays.fill(counts, 0);
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+
+	/**
+	 * Returns the number of values recorded.
+	 * @return The count.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the largest value recorded.
+	 * @return The largest value, 0 if none.
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the mean of the values recorded.
+	 * @return The mean, 0 if none.
+	 */
+	public double getMean() {
+		return count == 0 ? 0 : (double) total / count;
+	}
+
+	/**
+	 * Returns a percentile, nearest rank, as the middle of the bucket it falls in.
+	 * @param percent The percentile, 0 to 100.
+	 * @return The value at that percentile, 0 if none recorded.
+	 */
+	public long getPercentile(double percent) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < buckets; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(max, (lowest(i) + lowest(i + 1) - 1) / 2);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the bucket of a value.
+	 */
+	private static int index(long value) {
+		if (value < 2 * subBuckets) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - subBits;
+		return (shift + 1) * subBuckets + (int) (value >>> shift) - subBuckets;
+	}
+
+	/**
+	 * Returns the lowest value of a bucket.
+	 */
+	private static long lowest(int index) {
+		if (index < 2 * subBuckets) {
+			return index;
+		}
+		int shift = index / subBuckets - 1;
+		return (long) (index % subBuckets + subBuckets) << shift;
+	}
+}
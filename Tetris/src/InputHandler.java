@@ -0,0 +1,165 @@
+/**
+ * Turns the key events of the input queue into moves, once per logic step of the game loop. Holding left, right or
+ * drop repeats the move: first after the delayed auto shift (DAS), and then at the auto repeat rate (ARR). All timing
+ * uses the time stamps of the events, so it does not depend on when the event dispatch thread happened to run.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.awt.event.KeyEvent;
+
+public class InputHandler implements InputQueue.Consumer {
+
+	// Fields.
+	private final Board board;
+	private long delayedAutoShift;
+	private long autoRepeatRate;
+
+	// The direction held, -1 for left, 1 for right and 0 for none, and when to shift next.
+	private boolean leftHeld;
+	private boolean rightHeld;
+	private int direction;
+	private long nextShift;
+
+	// Whether drop is held and when to drop next.
+	private boolean dropHeld;
+	private long nextDrop;
+
+	// Whether the rotate keys are held, a rotation needs a new press.
+	private boolean rotateRightHeld;
+	private boolean rotateLeftHeld;
+
+	// Whether hard drop is held, it drops one piece per press.
+	private boolean hardDropHeld;
+
+	/**
+	 * Constructor for object InputHandler.
+	 * @param board The board to make the moves on.
+	 * @param delayedAutoShift Time in nanoseconds a key is held before it starts repeating.
+	 * @param autoRepeatRate Time in nanoseconds between repeats, 0 to move as far as possible at once.
+	 */
+	public InputHandler(Board board, long delayedAutoShift, long autoRepeatRate) {
+		this.board = board;
+		this.delayedAutoShift = delayedAutoShift;
+		this.autoRepeatRate = autoRepeatRate;
+	}
+
+	/**
+	 * Handles a key event. Presses of keys that are already held, like the repeats of the operating system, are ignored.
+	 */
+	@Override
+	public void keyEvent(long time, int key, boolean pressed) {
+		switch (key) {
+		case KeyEvent.VK_LEFT:
+			if (pressed != leftHeld) {
+				leftHeld = pressed;
+				updateDirection(time, pressed ? -1 : (rightHeld ? 1 : 0));
+			}
+			break;
+		case KeyEvent.VK_RIGHT:
+			if (pressed != rightHeld) {
+				rightHeld = pressed;
+				updateDirection(time, pressed ? 1 : (leftHeld ? -1 : 0));
+			}
+			break;
+		case KeyEvent.VK_SPACE:
+			if (pressed && !dropHeld) {
+				board.move(Constants.Movement.Down);
+				nextDrop = time + delayedAutoShift;
+			}
+			dropHeld = pressed;
+			break;
+		case KeyEvent.VK_SHIFT:
+			if (pressed && !hardDropHeld) {
+				board.move(Constants.Movement.HardDrop);
+			}
+			hardDropHeld = pressed;
+			break;
+		case KeyEvent.VK_DOWN:
+			if (pressed && !rotateRightHeld) {
+				board.move(Constants.Movement.RotateRight);
+			}
+			rotateRightHeld = pressed;
+			break;
+		case KeyEvent.VK_UP:
+			if (pressed && !rotateLeftHeld) {
+				board.move(Constants.Movement.RotateLeft);
+			}
+			rotateLeftHeld = pressed;
+			break;
+		case KeyEvent.VK_ENTER:
+			if (pressed && board.isRunning()) {
+				board.setGameOver(false);
+				board.start();
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Changes the direction held. A new direction moves at once and then waits for the delayed auto shift.
+	 */
+	private void updateDirection(long time, int newDirection) {
+		if (newDirection != direction) {
+			direction = newDirection;
+			if (direction != 0) {
+				board.move(movement(direction));
+				nextShift = time + delayedAutoShift;
+			}
+		}
+	}
+
+	private static Constants.Movement movement(int direction) {
+		return direction < 0 ? Constants.Movement.MoveLeft : Constants.Movement.MoveRight;
+	}
+
+	/**
+	 * Makes the repeats of the held keys that are due.
+	 * @param now The time of the logic step, in System.nanoTime.
+	 */
+	public void update(long now) {
+		if (direction != 0) {
+			nextShift = repeat(movement(direction), nextShift, now);
+		}
+		if (dropHeld) {
+			nextDrop = repeat(Constants.Movement.Down, nextDrop, now);
+		}
+	}
+
+	/**
+	 * Repeats a move for every repeat due by now.
+	 * @return When the next repeat is due.
+	 */
+	private long repeat(Constants.Movement movement, long next, long now) {
+		while (next <= now) {
+			boolean moved = board.move(movement);
+			if (autoRepeatRate == 0) {
+				if (!moved) {
+					// As far as it goes, try again next step.
+					return now + 1;
+				}
+			} else {
+				next += autoRepeatRate;
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Sets the delayed auto shift.
+	 * @param delayedAutoShift Time in nanoseconds a key is held before it starts repeating.
+	 */
+	public void setDelayedAutoShift(long delayedAutoShift) {
+		this.delayedAutoShift = delayedAutoShift;
+	}
+
+	/**
+	 * Sets the auto repeat rate.
+	 * @param autoRepeatRate Time in nanoseconds between repeats, 0 to move as far as possible at once.
+	 */
+	public void setAutoRepeatRate(long autoRepeatRate) {
+		this.autoRepeatRate = autoRepeatRate;
+	}
+}
@@ -1,5 +1,6 @@
 /**
- * The input listener that handles all the input from the user.
+ * The input listener that handles all the input from the user. Key presses and releases are stamped with the time
+ * they were received and queued for the game loop, which makes the moves.
  * @author Fredrik Ollinen Johansson
  */
 
@@ -41,45 +42,20 @@ public class InputListener implements KeyListener {
 	 */
 	@Override
 	public void keyPressed(KeyEvent e) {
-		if (board.isRunning()) {
-			int key = e.getKeyCode();
-			switch (key) {
-			case KeyEvent.VK_LEFT:
-				board.move(Constants.Movement.MoveLeft);
-				break;
-			case KeyEvent.VK_RIGHT:
-				board.move(Constants.Movement.MoveRight);
-				break;
-			case KeyEvent.VK_DOWN:
-				board.move(Constants.Movement.RotateRight);
-				break;
-			case KeyEvent.VK_UP:
-				board.move(Constants.Movement.RotateLeft);
-				break;
-			case KeyEvent.VK_SPACE:
-				board.move(Constants.Movement.Down);
-				break;
-			case KeyEvent.VK_ENTER:
-				board.setGameOver(false);
-				board.start();
-				break;
-			}
-		} else {
-			return;
-		}
-
+		long time = System.nanoTime();
+		board.getInputQueue().offer(time, e.getKeyCode(), true);
+		board.getMetrics().keyPressed(time);
 	}
 
 	/**
-	 * Does nothing. keyReleased is not needed for a game such as Tetris, but
-	 * needs to have an override since KeyListener is an interface.
+	 * Handles the release of a key, which ends the auto repeat of a held key.
 	 * 
 	 * @param e
 	 *            The key event.
 	 */
 	@Override
 	public void keyReleased(KeyEvent e) {
-		// Do nothing!
+		board.getInputQueue().offer(System.nanoTime(), e.getKeyCode(), false);
 	}
 
 }
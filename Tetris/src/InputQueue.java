@@ -0,0 +1,82 @@
+/**
+ * A lock-free queue of key events from the event dispatch thread to the game loop. Holds a fixed number of events,
+ * each stamped with System.nanoTime when it was received, in a ring buffer for one producer and one consumer.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class InputQueue {
+
+	/**
+	 * Receives the events drained from the queue.
+	 */
+	public interface Consumer {
+
+		/**
+		 * Handles one key event.
+		 * @param time When the event was received, in System.nanoTime.
+		 * @param key The key code as defined in KeyEvent.
+		 * @param pressed true if the key was pressed, false if it was released.
+		 */
+		void keyEvent(long time, int key, boolean pressed);
+	}
+
+	// Fields.
+	private final long[] times;
+	private final int[] keys;
+	private final int mask;
+	// Index of the next event to read, only written by the consumer.
+	private final AtomicLong head = new AtomicLong();
+	// Index of the next event to write, only written by the producer.
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * Constructor for object InputQueue.
+	 * @param capacity The number of events the queue can hold, rounded up to a power of two.
+	 */
+	public InputQueue(int capacity) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		times = new long[size];
+		keys = new int[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Adds an event. Only to be called from one thread.
+	 * @param time When the event was received, in System.nanoTime.
+	 * @param key The key code as defined in KeyEvent.
+	 * @param pressed true if the key was pressed, false if it was released.
+	 * @return true if the event was added, false if the queue is full.
+	 */
+	public boolean offer(long time, int key, boolean pressed) {
+		long t = tail.get();
+		if (t - head.get() == times.length) {
+			return false;
+		}
+		int i = (int) t & mask;
+		times[i] = time;
+		keys[i] = pressed ? key : ~key;
+		// Publishes the event written above to the consumer.
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Passes every event in the queue to a consumer, oldest first. Only to be called from one thread.
+	 * @param consumer The consumer of the events.
+	 * @return The number of events drained.
+	 */
+	public int drainTo(Consumer consumer) {
+		long h = head.get();
+		long t = tail.get();
+		for (long i = h; i < t; i++) {
+			int index = (int) i & mask;
+			int key = keys[index];
+			consumer.keyEvent(times[index], key >= 0 ? key : ~key, key >= 0);
+		}
+		head.lazySet(t);
+		return (int) (t - h);
+	}
+}
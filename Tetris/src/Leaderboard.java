@@ -0,0 +1,460 @@
+/**
+ * Persistent high scores. Every game is appended to a log of fixed size records, each with a CRC32 of its own, and
+ * forced to disk before add returns. The scores are ranked by an index file of (score, record) pairs sorted best
+ * first, which is memory mapped and binary searched, so ranking a score or reading the top scores touches a few pages
+ * instead of the whole log.
+ *
+ * Games added since the index was written are kept in a small sorted tail in memory, and merged into a new index file
+ * once the tail is full. Each index is written under a temporary name and renamed to the next generation, scores.N.idx,
+ * so a crash leaves the old one, and no file is ever replaced while it is mapped. Older generations are deleted once
+ * the new one is mapped, or on a later open if the system still holds them.
+ * On open, a record cut short or failing its checksum ends the log and is truncated away, and an index that does not
+ * match the log is rebuilt from it.
+ *
+ * Usage: java Leaderboard DIR [--top K] [--rank SCORE]
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+public class Leaderboard implements AutoCloseable {
+
+	// Layout of a record: score, level, lines, pieces (4 bytes each), time, seed (8 bytes each), CRC32 of the rest.
+	private static final int recordSize = 36;
+	private static final int checkedSize = recordSize - 4;
+
+	// Layout of the index: magic, version, number of records covered, then one entry of score and record per record.
+	private static final int indexMagic = 0x54534358;
+	private static final int indexVersion = 1;
+	private static final int headerSize = 16;
+	private static final int entrySize = 8;
+
+	// Largest number of games kept in memory before the index is rewritten.
+	private static final int maxTail = 1 << 16;
+
+	// Fields.
+	private final Path dir;
+	private final FileChannel log;
+	private final ByteBuffer record = ByteBuffer.allocate(recordSize);
+	private final CRC32 crc = new CRC32();
+	private MappedByteBuffer index;
+	private long generation;
+	private int indexed;
+	private long records;
+
+	// Games not in the index yet, best first.
+	private final int[] tailScores = new int[maxTail];
+	private final int[] tailRecords = new int[maxTail];
+	private int tail;
+
+	/**
+	 * Constructor for object Leaderboard. Opens the leaderboard in a directory, creating it if needed, and recovers
+	 * from a crash.
+	 * @param dir The directory of the log and the index.
+	 * @throws IOException If the files cannot be read or written.
+	 */
+	public Leaderboard(Path dir) throws IOException {
+		Files.createDirectories(dir);
+		this.dir = dir;
+		log = FileChannel.open(dir.resolve("scores.log"), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		records = log.size() / recordSize;
+		if (!openIndex()) {
+			indexed = 0;
+			index = null;
+		}
+		// Check the records the index does not cover, the last one may have been cut short by a crash.
+		for (long number = indexed; number < records; number++) {
+			if (!read(number)) {
+				records = number;
+				break;
+			}
+		}
+		log.truncate(records * recordSize);
+		if (index == null || records - indexed > maxTail) {
+			// Without a valid index, or too many games to keep in memory.
+			rebuild();
+		} else {
+			for (long number = indexed; number < records; number++) {
+				read(number);
+				addToTail(record.getInt(0), (int) number);
+			}
+		}
+	}
+
+	/**
+	 * Maps the newest generation of the index that is valid and covers no more records than the log holds, and
+	 * deletes the others.
+	 * @return true if one was mapped, false if it has to be rebuilt.
+	 */
+	private boolean openIndex() throws IOException {
+		List<Long> generations = generations();
+		Collections.sort(generations, Collections.reverseOrder());
+		if (!generations.isEmpty()) {
+			// A new generation must not reuse the name of an invalid one.
+			generation = generations.get(0);
+		}
+		for (long candidate : generations) {
+			if (mapIndex(indexFile(candidate))) {
+				deleteIndexes(candidate);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Maps an index file if it is valid and covers no more records than the log holds.
+	 * @return true if it was mapped.
+	 */
+	private boolean mapIndex(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < headerSize) {
+				return false;
+			}
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			long covered = mapped.getLong(8);
+			if (mapped.getInt(0) != indexMagic || mapped.getInt(4) != indexVersion || covered > records
+					|| channel.size() != headerSize + covered * entrySize) {
+				return false;
+			}
+			index = mapped;
+			indexed = (int) covered;
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the generations of the index files in the directory.
+	 * @return The generations, in no particular order.
+	 */
+	private List<Long> generations() throws IOException {
+		List<Long> generations = new ArrayList<Long>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "scores.*.idx")) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				String number = name.substring("scores.".length(), name.length() - ".idx".length());
+				try {
+					generations.add(Long.parseLong(number));
+				} catch (NumberFormatException e) {
+					// Not an index.
+				}
+			}
+		}
+		return generations;
+	}
+
+	/**
+	 * Deletes the index files of every generation but one. A file the system will not delete yet, such as one still
+	 * mapped on Windows, is left for a later open.
+	 */
+	private void deleteIndexes(long keep) throws IOException {
+		for (long old : generations()) {
+			if (old != keep) {
+				try {
+					Files.deleteIfExists(indexFile(old));
+				} catch (IOException e) {
+					// Try again next time.
+				}
+			}
+		}
+	}
+
+	private Path indexFile(long generation) {
+		return dir.resolve("scores." + generation + ".idx");
+	}
+
+	/**
+	 * Adds a finished game and forces it to disk.
+	 * @param score The score.
+	 * @param level The level reached.
+	 * @param lines The number of lines cleared.
+	 * @param pieces The number of pieces played.
+	 * @param seed The seed of the pieces.
+	 * @return The number of the record.
+	 * @throws IOException If the log cannot be written.
+	 */
+	public synchronized long add(int score, int level, int lines, int pieces, long seed) throws IOException {
+		long number = records;
+		record.clear();
+		record.putInt(score).putInt(level).putInt(lines).putInt(pieces).putLong(System.currentTimeMillis())
+				.putLong(seed);
+		crc.reset();
+		crc.update(record.array(), 0, checkedSize);
+		record.putInt((int) crc.getValue());
+		record.flip();
+		long position = number * recordSize;
+		while (record.hasRemaining()) {
+			position += log.write(record, position);
+		}
+		log.force(false);
+		if (tail == maxTail) {
+			rebuild();
+		}
+		records++;
+		addToTail(score, (int) number);
+		return number;
+	}
+
+	/**
+	 * Returns the rank a score has, 1 for the best. Equal scores share a rank.
+	 * @param score The score.
+	 * @return The number of games with a higher score, plus one.
+	 */
+	public synchronized long rank(int score) {
+		return better(score) + betterInTail(score) + 1;
+	}
+
+	/**
+	 * Returns the best scores.
+	 * @param k The number of scores.
+	 * @return At most k scores, best first, earlier games first among equal scores.
+	 * @throws IOException If the log cannot be read.
+	 */
+	public synchronized List<HighScore> top(int k) throws IOException {
+		List<HighScore> top = new ArrayList<HighScore>(Math.min(k, 1024));
+		int i = 0;
+		int j = 0;
+		while (top.size() < k && (i < indexed || j < tail)) {
+			boolean fromIndex = j == tail || (i < indexed && indexScore(i) >= tailScores[j]);
+			long number = fromIndex ? indexRecord(i++) : tailRecords[j++];
+			top.add(get(number));
+		}
+		return top;
+	}
+
+	/**
+	 * Reads one record.
+	 * @param number The number of the record.
+	 * @return The game.
+	 * @throws IOException If the record cannot be read or is corrupt.
+	 */
+	public synchronized HighScore get(long number) throws IOException {
+		if (number < 0 || number >= records || !read(number)) {
+			throw new IOException("No valid record " + number);
+		}
+		return new HighScore(number, record.getInt(0), record.getInt(4), record.getInt(8), record.getInt(12),
+				record.getLong(16), record.getLong(24));
+	}
+
+	/**
+	 * Returns the number of games.
+	 * @return The number of games.
+	 */
+	public synchronized long size() {
+		return records;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		log.close();
+		index = null;
+	}
+
+	/**
+	 * Reads a record into the record buffer and checks it.
+	 * @return true if it was complete and its checksum matched.
+	 */
+	private boolean read(long number) throws IOException {
+		record.clear();
+		long position = number * recordSize;
+		while (record.hasRemaining()) {
+			int read = log.read(record, position + record.position());
+			if (read < 0) {
+				return false;
+			}
+		}
+		crc.reset();
+		crc.update(record.array(), 0, checkedSize);
+		return (int) crc.getValue() == record.getInt(checkedSize);
+	}
+
+	private int indexScore(int i) {
+		return index.getInt(headerSize + i * entrySize);
+	}
+
+	private int indexRecord(int i) {
+		return index.getInt(headerSize + i * entrySize + 4);
+	}
+
+	/**
+	 * Counts the entries of the index with a higher score, by binary search.
+	 */
+	private int better(int score) {
+		int low = 0;
+		int high = indexed;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (indexScore(mid) > score) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Counts the games in the tail with a higher score, by binary search.
+	 */
+	private int betterInTail(int score) {
+		int low = 0;
+		int high = tail;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (tailScores[mid] > score) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Inserts a game into the tail after the games with the same or a higher score.
+	 */
+	private void addToTail(int score, int number) {
+		int at = 0;
+		int high = tail;
+		while (at < high) {
+			int mid = (at + high) >>> 1;
+			if (tailScores[mid] >= score) {
+				at = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		System.arraycopy(tailScores, at, tailScores, at + 1, tail - at);
+		System.arraycopy(tailRecords, at, tailRecords, at + 1, tail - at);
+		tailScores[at] = score;
+		tailRecords[at] = number;
+		tail++;
+	}
+
+	/**
+	 * Writes a new index of all records, merging the old index with the tail, or reading the whole log if there is
+	 * no old index. The new file replaces the old one only once it is complete.
+	 */
+	private void rebuild() throws IOException {
+		long[] keys;
+		int count;
+		if (index != null && indexed + tail == records) {
+			// Merge the index with the tail, which holds everything after it.
+			count = indexed + tail;
+			keys = null;
+		} else {
+			count = (int) records;
+			keys = new long[count];
+			for (int number = 0; number < count; number++) {
+				if (!read(number)) {
+					throw new IOException("Corrupt record " + number + " in the middle of the log");
+				}
+				// Best score first, then earlier record first.
+				keys[number] = ((long) (Integer.MAX_VALUE - record.getInt(0)) << 32) | number;
+			}
+			Arrays.sort(keys);
+		}
+		Path temporary = dir.resolve("scores.idx.tmp");
+		try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+			buffer.putInt(indexMagic).putInt(indexVersion).putLong(count);
+			int i = 0;
+			int j = 0;
+			for (int n = 0; n < count; n++) {
+				int score;
+				int number;
+				if (keys != null) {
+					score = Integer.MAX_VALUE - (int) (keys[n] >>> 32);
+					number = (int) keys[n];
+				} else if (j == tail || (i < indexed && indexScore(i) >= tailScores[j])) {
+					score = indexScore(i);
+					number = indexRecord(i++);
+				} else {
+					score = tailScores[j];
+					number = tailRecords[j++];
+				}
+				if (buffer.remaining() < entrySize) {
+					write(out, buffer);
+				}
+				buffer.putInt(score).putInt(number);
+			}
+			write(out, buffer);
+			out.force(true);
+		}
+		// A new name, the old file may still be mapped by this or another reader.
+		Path file = indexFile(generation + 1);
+		Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+		generation++;
+		tail = 0;
+		index = null;
+		if (!mapIndex(file)) {
+			throw new IOException("Index " + file + " was not written");
+		}
+		deleteIndexes(generation);
+	}
+
+	private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Main method. Prints the top scores, or the rank of a score.
+	 * @param args The directory, then the options, see the class comment.
+	 * @throws IOException If the leaderboard cannot be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: java Leaderboard DIR [--top K] [--rank SCORE]");
+			return;
+		}
+		int k = 10;
+		Integer rank = null;
+		for (int i = 1; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "--top":
+				k = Integer.parseInt(args[i + 1]);
+				break;
+			case "--rank":
+				rank = Integer.parseInt(args[i + 1]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		try (Leaderboard leaderboard = new Leaderboard(Paths.get(args[0]))) {
+			if (rank != null) {
+				System.out.println("Score " + rank + " ranks " + leaderboard.rank(rank) + " of " + leaderboard.size());
+				return;
+			}
+			SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+			int place = 1;
+			for (HighScore score : leaderboard.top(k)) {
+				System.out.println(String.format("%4d %8d  level %2d  lines %4d  %s", place++, score.getScore(),
+						score.getLevel(), score.getLines(), format.format(new Date(score.getTime()))));
+			}
+		}
+	}
+}
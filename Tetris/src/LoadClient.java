@@ -0,0 +1,274 @@
+/**
+ * Load generator for GameServer. Opens many connections over loopback, plays random moves on each at a fixed rate with
+ * one move in flight per connection, and reports the round trip latency of the moves.
+ *
+ * Usage: java LoadClient [--host HOST] [--port N] [--connections N] [--threads N] [--rate MOVES_PER_SECOND]
+ *                        [--seconds N] [--embedded]
+ * With --embedded a server is started in the same process on a free port.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Random;
+
+public class LoadClient implements Runnable {
+
+	// All movements.
+	private static final Constants.Movement[] movements = Constants.Movement.values();
+
+	// Options.
+	private static String host = "localhost";
+	private static int port = 7777;
+	private static int connections = 1000;
+	private static int threads = 2;
+	private static int rate = 20;
+	private static int seconds = 10;
+	private static boolean embedded;
+
+	// Fields of a client thread.
+	private final int first;
+	private final int count;
+	private final long deadline;
+	private final Histogram latency = new Histogram();
+	private long moves;
+	private long rejected;
+	private long games;
+	private Exception failure;
+
+	/**
+	 * The state of one connection.
+	 */
+	private static class Connection {
+		SocketChannel channel;
+		ByteBuffer in = ByteBuffer.allocate(256);
+		ByteBuffer out = ByteBuffer.allocate(256);
+		int sequence;
+		boolean waiting;
+		boolean restart;
+		long sentAt;
+		long nextSend;
+	}
+
+	/**
+	 * Constructor for object LoadClient.
+	 * @param first The number of the first connection of this thread, used as the seed of its first game.
+	 * @param count The number of connections of this thread.
+	 * @param deadline When to stop sending, in System.nanoTime.
+	 */
+	private LoadClient(int first, int count, long deadline) {
+		this.first = first;
+		this.count = count;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Main method.
+	 * @param args Options, see the class comment.
+	 * @throws Exception If the server cannot be reached.
+	 */
+	public static void main(String[] args) throws Exception {
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--embedded")) {
+				embedded = true;
+				continue;
+			}
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + args[i]);
+			}
+			String value = args[++i];
+			switch (args[i - 1]) {
+			case "--host":
+				host = value;
+				break;
+			case "--port":
+				port = Integer.parseInt(value);
+				break;
+			case "--connections":
+				connections = Integer.parseInt(value);
+				break;
+			case "--threads":
+				threads = Integer.parseInt(value);
+				break;
+			case "--rate":
+				rate = Integer.parseInt(value);
+				break;
+			case "--seconds":
+				seconds = Integer.parseInt(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+			}
+		}
+		GameServer server = null;
+		if (embedded) {
+			server = new GameServer(0, Math.max(1, Runtime.getRuntime().availableProcessors() - threads));
+			server.start();
+			host = "localhost";
+			port = server.getPort();
+		}
+
+		long deadline = System.nanoTime() + seconds * 1000000000L;
+		LoadClient[] clients = new LoadClient[threads];
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			int first = (int) ((long) connections * i / threads);
+			int last = (int) ((long) connections * (i + 1) / threads);
+			clients[i] = new LoadClient(first, last - first, deadline);
+			workers[i] = new Thread(clients[i], "load-client-" + i);
+			workers[i].start();
+		}
+		Histogram latency = new Histogram();
+		long moves = 0;
+		long rejected = 0;
+		long games = 0;
+		for (int i = 0; i < threads; i++) {
+			workers[i].join();
+			if (clients[i].failure != null) {
+				throw clients[i].failure;
+			}
+			latency.add(clients[i].latency);
+			moves += clients[i].moves;
+			rejected += clients[i].rejected;
+			games += clients[i].games;
+		}
+		Histogram tickLag = null;
+		if (server != null) {
+			tickLag = server.getTickLag();
+			server.stop();
+		}
+
+		System.out.println(String.format(Locale.ROOT, "connections      %d on %d threads for %d s", connections,
+				threads, seconds));
+		System.out.println(String.format(Locale.ROOT, "moves/s          %.1f (%.1f%% rejected)", (double) moves / seconds,
+				moves == 0 ? 0 : 100.0 * rejected / moves));
+		System.out.println(String.format(Locale.ROOT, "games            %d", games));
+		System.out.println(String.format(Locale.ROOT,
+				"round trip us    mean %.1f p50 %.1f p90 %.1f p99 %.1f p99.9 %.1f max %.1f", latency.getMean() / 1000,
+				latency.getPercentile(50) / 1000.0, latency.getPercentile(90) / 1000.0,
+				latency.getPercentile(99) / 1000.0, latency.getPercentile(99.9) / 1000.0, latency.getMax() / 1000.0));
+		if (tickLag != null) {
+			System.out.println(String.format(Locale.ROOT,
+					"server tick lag  %d falls in the last second, p50 %.1f p99 %.1f max %.1f us", tickLag.getCount(),
+					tickLag.getPercentile(50) / 1000.0, tickLag.getPercentile(99) / 1000.0, tickLag.getMax() / 1000.0));
+		}
+	}
+
+	@Override
+	public void run() {
+		Connection[] open = new Connection[count];
+		Random rand = new Random(first);
+		long interval = 1000000000L / rate;
+		try (Selector selector = Selector.open()) {
+			for (int i = 0; i < count; i++) {
+				Connection connection = new Connection();
+				connection.channel = SocketChannel.open(new InetSocketAddress(host, port));
+				connection.channel.socket().setTcpNoDelay(true);
+				connection.channel.configureBlocking(false);
+				connection.channel.register(selector, SelectionKey.OP_READ, connection);
+				// Spread the first moves over one interval so the connections do not send in lockstep.
+				connection.nextSend = System.nanoTime() + rand.nextInt((int) Math.min(Integer.MAX_VALUE, interval));
+				sendStart(connection, first + i);
+				open[i] = connection;
+			}
+			while (System.nanoTime() < deadline) {
+				selector.select(1);
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					receive((Connection) key.attachment());
+				}
+				long now = System.nanoTime();
+				for (int i = 0; i < count; i++) {
+					Connection connection = open[i];
+					if (!connection.waiting && connection.restart) {
+						connection.restart = false;
+						sendStart(connection, rand.nextInt());
+					} else if (!connection.waiting && now >= connection.nextSend) {
+						connection.out.put(Protocol.move);
+						connection.out.putInt(++connection.sequence);
+						connection.out.put((byte) rand.nextInt(movements.length));
+						connection.waiting = true;
+						connection.sentAt = now;
+						connection.nextSend += interval;
+						if (connection.nextSend < now) {
+							connection.nextSend = now + interval;
+						}
+					}
+					if (connection.out.position() > 0) {
+						connection.out.flip();
+						connection.channel.write(connection.out);
+						connection.out.compact();
+					}
+				}
+			}
+		} catch (IOException e) {
+			failure = e;
+		} finally {
+			for (Connection connection : open) {
+				if (connection != null) {
+					try {
+						connection.channel.close();
+					} catch (IOException e) {
+						// Closing anyway.
+					}
+				}
+			}
+		}
+	}
+
+	private void sendStart(Connection connection, long seed) {
+		connection.out.put(Protocol.start);
+		connection.out.putLong(seed);
+		connection.waiting = true;
+		connection.sentAt = System.nanoTime();
+		games++;
+	}
+
+	/**
+	 * Reads the answers of the server on a connection.
+	 */
+	private void receive(Connection connection) throws IOException {
+		if (connection.channel.read(connection.in) < 0) {
+			throw new IOException("Server closed the connection");
+		}
+		long now = System.nanoTime();
+		ByteBuffer in = connection.in;
+		in.flip();
+		while (in.hasRemaining()) {
+			byte type = in.get(in.position());
+			if (type == Protocol.ack && in.remaining() >= Protocol.ackSize) {
+				in.get();
+				int sequence = in.getInt();
+				boolean accepted = in.get() != 0;
+				in.getInt();
+				in.getInt();
+				if (sequence > 0) {
+					latency.record(now - connection.sentAt);
+					moves++;
+					if (!accepted) {
+						rejected++;
+					}
+				}
+				connection.waiting = false;
+			} else if (type == Protocol.gameOver && in.remaining() >= Protocol.gameOverSize) {
+				in.get();
+				in.getInt();
+				connection.restart = true;
+			} else if (type != Protocol.ack && type != Protocol.gameOver) {
+				throw new IOException("Unknown message " + type);
+			} else {
+				break;
+			}
+		}
+		in.compact();
+	}
+}
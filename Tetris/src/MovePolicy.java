@@ -0,0 +1,15 @@
+/**
+ * Decides the moves of a player that is not a human, one move at a time.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+public interface MovePolicy {
+
+	/**
+	 * Returns the next move to make with the falling piece.
+	 * @param engine The game being played.
+	 * @return The move to make, or null to wait for the next gravity tick.
+	 */
+	Constants.Movement nextMove(GameEngine engine);
+}
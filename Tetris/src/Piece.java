@@ -0,0 +1,133 @@
+/**
+ * The falling piece. A shared Shape plus its rotation and the position of its box, changed in place so that
+ * moving and rotating never allocates.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+public class Piece {
+
+	// Fields.
+	private Shape shape;
+	private int rotation;
+	private int y;
+	private int x;
+
+	/**
+	 * Places a new piece of a type at the top of the board.
+	 *
+	 * @param type
+	 *            The type of the piece as defined in Constants.
+	 */
+	public void spawn(Constants.Type type) {
+		shape = Shape.of(type);
+		rotation = 0;
+		y = shape.getSpawnY();
+		x = shape.getSpawnX();
+	}
+
+	/**
+	 * Moves the piece.
+	 *
+	 * @param rotation
+	 *            The new rotation.
+	 * @param y
+	 *            The new row of the top of the box.
+	 * @param x
+	 *            The new column of the left of the box.
+	 */
+	public void set(int rotation, int y, int x) {
+		this.rotation = rotation;
+		this.y = y;
+		this.x = x;
+	}
+
+	/**
+	 * Copies another piece into this one.
+	 *
+	 * @param other
+	 *            The piece to copy.
+	 */
+	public void set(Piece other) {
+		shape = other.shape;
+		rotation = other.rotation;
+		y = other.y;
+		x = other.x;
+	}
+
+	/**
+	 * Returns the type of this piece as defined in constants.
+	 *
+	 * @return The type of this piece.
+	 */
+	public Constants.Type getType() {
+		return shape.getType();
+	}
+
+	/**
+	 * Returns the shared shape of this piece.
+	 *
+	 * @return The shape.
+	 */
+	public Shape getShape() {
+		return shape;
+	}
+
+	/**
+	 * Returns the rotation of this piece, 0 to 3 steps right of the spawn rotation.
+	 *
+	 * @return The rotation.
+	 */
+	public int getRotation() {
+		return rotation;
+	}
+
+	/**
+	 * Returns the row of the top of the box.
+	 *
+	 * @return The row.
+	 */
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * Returns the column of the left of the box.
+	 *
+	 * @return The column.
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * Returns the number of blocks in this piece.
+	 *
+	 * @return The number of blocks.
+	 */
+	public int size() {
+		return shape.size();
+	}
+
+	/**
+	 * Returns the row of a block on the board.
+	 *
+	 * @param i
+	 *            The index of the block.
+	 * @return The row of the block.
+	 */
+	public int getBlockY(int i) {
+		return y + shape.getOffsetY(rotation, i);
+	}
+
+	/**
+	 * Returns the column of a block on the board.
+	 *
+	 * @param i
+	 *            The index of the block.
+	 * @return The column of the block.
+	 */
+	public int getBlockX(int i) {
+		return x + shape.getOffsetX(rotation, i);
+	}
+}
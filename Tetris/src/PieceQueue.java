@@ -0,0 +1,157 @@
+/**
+ * The upcoming pieces of a game. A ring buffer that is refilled from a Randomizer in batches whenever fewer than
+ * maxPreview pieces are left, so any of the next maxPreview pieces can be peeked at without allocating.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.Random;
+
+public class PieceQueue {
+
+	// Size of the ring, a power of two, and the number of pieces that can always be peeked at.
+	private static final int capacity = 32;
+	public static final int maxPreview = capacity / 2;
+
+	// Number of ints save writes, the ring packed eight types to an int followed by head, size and the randomizer.
+	public static final int stateSize = capacity / 8 + 4;
+
+	// All types.
+	private static final Constants.Type[] types = Constants.Type.values();
+
+	// Fields.
+	private final Constants.Type[] ring = new Constants.Type[capacity];
+	private final Randomizer randomizer;
+	private final Random rand;
+	private int head;
+	private int size;
+
+	/**
+	 * Constructor for object PieceQueue.
+	 * @param randomizer Picks the pieces.
+	 * @param rand The random generator of the game.
+	 */
+	public PieceQueue(Randomizer randomizer, Random rand) {
+		this.randomizer = randomizer;
+		this.rand = rand;
+	}
+
+	/**
+	 * Empties the queue and resets the randomizer. Pieces are drawn from the random generator again from its current
+	 * state, so seed it before calling this.
+	 */
+	public void reset() {
+		randomizer.reset();
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * Takes the next piece.
+	 * @return The type of the piece.
+	 */
+	public Constants.Type next() {
+		if (size <= maxPreview) {
+			refill();
+		}
+		Constants.Type type = ring[head];
+		head = (head + 1) & (capacity - 1);
+		size--;
+		return type;
+	}
+
+	/**
+	 * Returns an upcoming piece without taking it.
+	 * @param i 0 for the piece next returns, up to maxPreview - 1.
+	 * @return The type of the piece.
+	 */
+	public Constants.Type peek(int i) {
+		if (i < 0 || i >= maxPreview) {
+			throw new IndexOutOfBoundsException("Preview " + i + " of " + maxPreview);
+		}
+		if (size <= i) {
+			refill();
+		}
+		return ring[(head + i) & (capacity - 1)];
+	}
+
+	/**
+	 * Copies the upcoming pieces into an array.
+	 * @param into The array to copy to.
+	 * @param count The number of pieces, at most maxPreview.
+	 * @return The number of pieces copied.
+	 */
+	public int peek(Constants.Type[] into, int count) {
+		count = Math.min(Math.min(count, maxPreview), into.length);
+		if (size < count) {
+			refill();
+		}
+		for (int i = 0; i < count; i++) {
+			into[i] = ring[(head + i) & (capacity - 1)];
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the randomizer picking the pieces.
+	 * @return The randomizer.
+	 */
+	public Randomizer getRandomizer() {
+		return randomizer;
+	}
+
+	/**
+	 * Writes the pieces and the state of the randomizer to an array, without allocating.
+	 * @param to The array to write to.
+	 * @param at The index of the first of stateSize ints to write.
+	 */
+	public void save(int[] to, int at) {
+		for (int i = 0; i < capacity / 8; i++) {
+			int packed = 0;
+			for (int j = 7; j >= 0; j--) {
+				// 0 for a slot that has never been filled.
+				Constants.Type type = ring[i * 8 + j];
+				packed = (packed << 4) | (type == null ? 0 : type.ordinal() + 1);
+			}
+			to[at++] = packed;
+		}
+		to[at++] = head;
+		to[at++] = size;
+		long state = randomizer.getState();
+		to[at++] = (int) (state >>> 32);
+		to[at] = (int) state;
+	}
+
+	/**
+	 * Reads the pieces and the state of the randomizer back from an array written by save.
+	 * @param from The array to read from.
+	 * @param at The index of the first of stateSize ints to read.
+	 */
+	public void restore(int[] from, int at) {
+		for (int i = 0; i < capacity / 8; i++) {
+			int packed = from[at++];
+			for (int j = 0; j < 8; j++) {
+				int ordinal = packed & 0xF;
+				ring[i * 8 + j] = ordinal == 0 ? null : types[ordinal - 1];
+				packed >>>= 4;
+			}
+		}
+		head = from[at++];
+		size = from[at++];
+		randomizer.setState(((long) from[at++] << 32) | (from[at] & 0xFFFFFFFFL));
+	}
+
+	/**
+	 * Fills the free part of the ring, in at most two runs since it may wrap around.
+	 */
+	private void refill() {
+		int tail = (head + size) & (capacity - 1);
+		int free = capacity - size;
+		int run = Math.min(free, capacity - tail);
+		randomizer.fill(rand, ring, tail, run);
+		if (run < free) {
+			randomizer.fill(rand, ring, 0, free - run);
+		}
+		size = capacity;
+	}
+}
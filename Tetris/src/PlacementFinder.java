@@ -0,0 +1,285 @@
+/**
+ * Finds every place a piece can come to rest on the board, together with the shortest sequence of moves that takes
+ * it there. Does a breadth first search over (rotation, row, column) with the same collision check and kicks as the
+ * engine. All buffers are allocated once, so a finder can be reused for any number of searches.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.Arrays;
+
+public class PlacementFinder {
+
+	// All movements.
+	private static final Constants.Movement[] movements = Constants.Movement.values();
+
+	// Range of the box positions searched. The box may stick out of the board as long as its blocks do not.
+	private static final int minY = -4;
+	private static final int minX = -3;
+	private static final int rowsSearched = GameEngine.height - minY;
+	private static final int columnsSearched = GameEngine.width - minX;
+	private static final int states = 4 * rowsSearched * columnsSearched;
+
+	// No path can be longer than the number of states searched.
+	public static final int maxPathLength = states;
+
+	// Search buffers, indexed by state.
+	private final long[] visited = new long[(states + 63) / 64];
+	private final int[] queue = new int[states];
+	private final int[] parent = new int[states];
+	private final byte[] parentMove = new byte[states];
+	private final short[] depth = new short[states];
+
+	// The placements found, in the order of their distance from the start.
+	private final int[] placements = new int[states];
+	private final long[] footprints = new long[states];
+	private int count;
+	private Shape shape;
+
+	/**
+	 * Finds the placements of the falling piece of an engine, starting where it is now.
+	 * @param engine The engine to search.
+	 * @return The number of placements found.
+	 */
+	public int find(GameEngine engine) {
+		Piece piece = engine.getFallingPiece();
+		return find(engine, piece.getShape(), piece.getRotation(), piece.getY(), piece.getX());
+	}
+
+	/**
+	 * Finds the placements of a piece of a type spawned on the board of an engine.
+	 * @param engine The engine to search.
+	 * @param type The type of the piece.
+	 * @return The number of placements found, 0 if the piece does not fit where it spawns.
+	 */
+	public int find(GameEngine engine, Constants.Type type) {
+		Shape shape = Shape.of(type);
+		return find(engine, shape, 0, shape.getSpawnY(), shape.getSpawnX());
+	}
+
+	/**
+	 * Runs the search.
+	 * @param engine The engine to search.
+	 * @param shape The shape of the piece.
+	 * @param rotation The rotation to start from.
+	 * @param y The row of the box to start from.
+	 * @param x The column of the box to start from.
+	 * @return The number of placements found.
+	 */
+	private int find(GameEngine engine, Shape shape, int rotation, int y, int x) {
+		this.shape = shape;
+		count = 0;
+		Arrays.fill(visited, 0);
+		if (!engine.fits(shape, rotation, y, x)) {
+			return 0;
+		}
+		int start = index(rotation, y, x);
+		int head = 0;
+		int tail = 0;
+		visit(start);
+		parent[start] = -1;
+		depth[start] = 0;
+		queue[tail++] = start;
+		while (head < tail) {
+			int state = queue[head++];
+			rotation = rotationOf(state);
+			y = rowOf(state);
+			x = columnOf(state);
+			if (!engine.fits(shape, rotation, y + 1, x)) {
+				addPlacement(state);
+			}
+			for (int m = 0; m < movements.length; m++) {
+				int next = move(engine, movements[m], rotation, y, x);
+				if (next >= 0 && !isVisited(next)) {
+					visit(next);
+					parent[next] = state;
+					parentMove[next] = (byte) m;
+					depth[next] = (short) (depth[state] + 1);
+					queue[tail++] = next;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Applies a movement the way the engine does, without locking.
+	 * @return The state after the movement, or -1 if it is not possible.
+	 */
+	private int move(GameEngine engine, Constants.Movement movement, int rotation, int y, int x) {
+		switch (movement) {
+		case MoveLeft:
+			return engine.fits(shape, rotation, y, x - 1) ? index(rotation, y, x - 1) : -1;
+		case MoveRight:
+			return engine.fits(shape, rotation, y, x + 1) ? index(rotation, y, x + 1) : -1;
+		case Down:
+			return engine.fits(shape, rotation, y + 1, x) ? index(rotation, y + 1, x) : -1;
+		case RotateRight:
+			return rotate(engine, 0, rotation, Shape.rotateRight(rotation), y, x);
+		case RotateLeft:
+			return rotate(engine, 1, rotation, Shape.rotateLeft(rotation), y, x);
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Rotates with the first kick that fits, the same way as the engine.
+	 * @return The state after the rotation, or -1 if no kick fits.
+	 */
+	private int rotate(GameEngine engine, int direction, int from, int to, int y, int x) {
+		for (int i = 0; i < shape.getKicks(from, direction); i++) {
+			int kickedY = y + shape.getKickY(from, direction, i);
+			int kickedX = x + shape.getKickX(from, direction, i);
+			if (engine.fits(shape, to, kickedY, kickedX)) {
+				return index(to, kickedY, kickedX);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds a resting state unless a placement covering the same blocks has already been found by a shorter path.
+	 */
+	private void addPlacement(int state) {
+		long footprint = footprint(state);
+		for (int i = 0; i < count; i++) {
+			if (footprints[i] == footprint) {
+				return;
+			}
+		}
+		placements[count] = state;
+		footprints[count] = footprint;
+		count++;
+	}
+
+	/**
+	 * The blocks covered by a state, as the board row of its top block followed by the board columns of each row from
+	 * there to its bottom block. The empty rows of the box are left out, so the same blocks reached through another
+	 * rotation give the same footprint.
+	 */
+	private long footprint(int state) {
+		int rotation = rotationOf(state);
+		int x = columnOf(state);
+		int top = 0;
+		while (shape.getRowMask(rotation, top) == 0) {
+			top++;
+		}
+		int bottom = shape.getBoxSize() - 1;
+		while (shape.getRowMask(rotation, bottom) == 0) {
+			bottom--;
+		}
+		long footprint = rowOf(state) + top - minY;
+		for (int i = top; i <= bottom; i++) {
+			footprint = (footprint << 14) | ((shape.getRowMask(rotation, i) << (x - minX)) & 0x3FFF);
+		}
+		return footprint;
+	}
+
+	private static int index(int rotation, int y, int x) {
+		return (rotation * rowsSearched + y - minY) * columnsSearched + x - minX;
+	}
+
+	private static int rotationOf(int state) {
+		return state / (rowsSearched * columnsSearched);
+	}
+
+	private static int rowOf(int state) {
+		return state / columnsSearched % rowsSearched + minY;
+	}
+
+	private static int columnOf(int state) {
+		return state % columnsSearched + minX;
+	}
+
+	private boolean isVisited(int state) {
+		return (visited[state >>> 6] & (1L << state)) != 0;
+	}
+
+	private void visit(int state) {
+		visited[state >>> 6] |= 1L << state;
+	}
+
+	/**
+	 * Returns the number of placements found by the last search.
+	 * @return The number of placements.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns the type of the piece of the last search.
+	 * @return The type.
+	 */
+	public Constants.Type getType() {
+		return shape.getType();
+	}
+
+	/**
+	 * Returns the rotation of a placement.
+	 * @param i The index of the placement.
+	 * @return The rotation, 0 to 3 steps right of the spawn rotation.
+	 */
+	public int getRotation(int i) {
+		return rotationOf(placements[i]);
+	}
+
+	/**
+	 * Returns the row of the top of the box of a placement.
+	 * @param i The index of the placement.
+	 * @return The row.
+	 */
+	public int getY(int i) {
+		return rowOf(placements[i]);
+	}
+
+	/**
+	 * Returns the column of the left of the box of a placement.
+	 * @param i The index of the placement.
+	 * @return The column.
+	 */
+	public int getX(int i) {
+		return columnOf(placements[i]);
+	}
+
+	/**
+	 * Returns the number of moves in the shortest path to a placement.
+	 * @param i The index of the placement.
+	 * @return The number of moves.
+	 */
+	public int getPathLength(int i) {
+		return depth[placements[i]];
+	}
+
+	/**
+	 * Writes the shortest path to a placement. Making these moves puts the piece at the placement, one more Down locks it.
+	 * @param i The index of the placement.
+	 * @param path The array to write the moves to, at least getPathLength(i) long.
+	 * @return The number of moves written.
+	 */
+	public int getPath(int i, Constants.Movement[] path) {
+		return getPath(i, path, null);
+	}
+
+	/**
+	 * Writes the shortest path to a placement together with the row the piece is at before each of its moves, which
+	 * tells whether gravity has moved the piece off the path since.
+	 * @param i The index of the placement.
+	 * @param path The array to write the moves to, at least getPathLength(i) long.
+	 * @param rows The array to write the rows of the top of the box to, as long as path, or null.
+	 * @return The number of moves written.
+	 */
+	public int getPath(int i, Constants.Movement[] path, int[] rows) {
+		int state = placements[i];
+		int length = depth[state];
+		for (int j = length - 1; j >= 0; j--) {
+			path[j] = movements[parentMove[state]];
+			state = parent[state];
+			if (rows != null) {
+				rows[j] = rowOf(state);
+			}
+		}
+		return length;
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * A policy that picks one of the reachable placements of each piece at random and drops the piece there.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.Random;
+
+public class PlacementPolicy implements MovePolicy {
+
+	// Fields.
+	private final Random rand;
+	private final PlacementFinder finder = new PlacementFinder();
+	private final Constants.Movement[] path = new Constants.Movement[PlacementFinder.maxPathLength];
+	private int pathLength;
+	private int next;
+	private int plannedPiece = -1;
+
+	/**
+	 * Constructor for object PlacementPolicy.
+	 * @param rand The random generator picking the placements.
+	 */
+	public PlacementPolicy(Random rand) {
+		this.rand = rand;
+	}
+
+	@Override
+	public Constants.Movement nextMove(GameEngine engine) {
+		if (engine.isFinished()) {
+			return null;
+		}
+		if (plannedPiece != engine.getPieces()) {
+			plannedPiece = engine.getPieces();
+			next = 0;
+			pathLength = 0;
+			int placements = finder.find(engine);
+			if (placements > 0) {
+				pathLength = finder.getPath(rand.nextInt(placements), path);
+			}
+		}
+		// Once at the placement, moving down locks the piece.
+		return next < pathLength ? path[next++] : Constants.Movement.Down;
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * The binary protocol between GameServer and its clients. Every message is a type byte followed by a fixed number of
+ * big-endian fields, so the size of a message is known from its first byte.
+ *
+ * Client to server:
+ * start    seed (8 bytes). Starts a new game seeded with the seed, answered by an ack with sequence 0.
+ * move     sequence (4 bytes), movement ordinal (1 byte). Answered by an ack with the same sequence.
+ *
+ * Server to client:
+ * ack      sequence (4 bytes), accepted (1 byte), score (4 bytes), pieces (4 bytes).
+ * gameOver score (4 bytes). Sent when gravity ends the game, further moves are rejected until the next start.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+public class Protocol {
+
+	// Message types.
+	static final byte start = 1;
+	static final byte move = 2;
+	static final byte ack = 3;
+	static final byte gameOver = 4;
+
+	// Message sizes in bytes, including the type.
+	static final int startSize = 9;
+	static final int moveSize = 6;
+	static final int ackSize = 14;
+	static final int gameOverSize = 5;
+
+	/**
+	 * Returns the size of a message sent to the server.
+	 * @param type The type of the message.
+	 * @return The size in bytes, or -1 for an unknown type.
+	 */
+	static int clientMessageSize(byte type) {
+		switch (type) {
+		case start:
+			return startSize;
+		case move:
+			return moveSize;
+		default:
+			return -1;
+		}
+	}
+}
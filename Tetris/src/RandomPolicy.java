@@ -0,0 +1,34 @@
+/**
+ * A policy that makes random moves and then waits for gravity. Mostly useful for measuring the engine itself.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.Random;
+
+public class RandomPolicy implements MovePolicy {
+
+	// All movements.
+	private static final Constants.Movement[] movements = Constants.Movement.values();
+
+	// Fields.
+	private final Random rand;
+	private int moves;
+
+	/**
+	 * Constructor for object RandomPolicy.
+	 * @param rand The random generator picking the moves.
+	 */
+	public RandomPolicy(Random rand) {
+		this.rand = rand;
+	}
+
+	@Override
+	public Constants.Movement nextMove(GameEngine engine) {
+		// Two moves per tick, like a player tapping the keys.
+		if (++moves % 3 == 0) {
+			return null;
+		}
+		return movements[rand.nextInt(movements.length)];
+	}
+}
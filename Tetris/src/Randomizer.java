@@ -0,0 +1,59 @@
+/**
+ * Picks the types of the pieces of a game. Implementations draw from the random generator of the engine, so that a
+ * game is reproduced exactly by seeding it, and fill whole batches at a time for the lookahead queue.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.Random;
+
+public interface Randomizer {
+
+	/**
+	 * Forgets any state kept between batches. Called when a game starts.
+	 */
+	void reset();
+
+	/**
+	 * Picks the next pieces.
+	 * @param rand The random generator of the game.
+	 * @param buffer The array to write the types to.
+	 * @param offset The index of the first piece to write.
+	 * @param count The number of pieces to write.
+	 */
+	void fill(Random rand, Constants.Type[] buffer, int offset, int count);
+
+	/**
+	 * Returns the name the randomizer is created by, see create.
+	 * @return The name.
+	 */
+	String getName();
+
+	/**
+	 * Returns the state kept between batches, packed so that it can be saved without allocating.
+	 * @return The state.
+	 */
+	long getState();
+
+	/**
+	 * Sets the state kept between batches, as returned by getState.
+	 * @param state The state.
+	 */
+	void setState(long state);
+
+	/**
+	 * Creates a randomizer by name.
+	 * @param name bag or uniform.
+	 * @return The randomizer.
+	 */
+	static Randomizer create(String name) {
+		switch (name) {
+		case "bag":
+			return new BagRandomizer();
+		case "uniform":
+			return new UniformRandomizer();
+		default:
+			throw new IllegalArgumentException("Unknown randomizer " + name);
+		}
+	}
+}
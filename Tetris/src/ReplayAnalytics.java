@@ -0,0 +1,357 @@
+/**
+ * Batch job computing statistics of the players over directories of replays. The directories are walked lazily and
+ * the files handed to worker threads through a bounded queue. Every worker plays its replays on its own engines and
+ * adds them to its own partial statistics, which are merged into the totals every few hundred games and cleared.
+ * Nothing grows with the number of files, so any archive is processed in the same memory.
+ *
+ * Large replays are memory mapped. Small ones, which is nearly all of them, are read into a buffer of the worker that
+ * is reused, since every mapping lasts until its buffer is garbage collected and millions of them would run into the
+ * limit on mappings first.
+ *
+ * Usage: java ReplayAnalytics [--threads N] [--report-every N] DIR...
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.Stream;
+
+public class ReplayAnalytics {
+
+	// Files larger than this are mapped, smaller ones read.
+	private static final int mapThreshold = 64 * 1024;
+
+	// Games a worker plays before merging its statistics into the totals.
+	private static final int mergeInterval = 256;
+
+	// Highest level a game can reach, see GameEngine.
+	private static final int maxLevel = 11;
+
+	// Tells a worker there are no more files.
+	private static final Path endOfFiles = Paths.get("");
+
+	// Options.
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long reportEvery = 100000;
+	private final List<Path> directories = new ArrayList<>();
+
+	// The statistics of all games merged so far, guarded by its monitor.
+	private final Stats totals = new Stats();
+	private final BlockingQueue<Path> files = new ArrayBlockingQueue<>(1024);
+	private long start;
+
+	// The first error that stopped a worker, thrown once all of them are done.
+	private volatile Throwable failure;
+
+	/**
+	 * Main method.
+	 * @param args Options and directories, see the class comment.
+	 * @throws Exception If a directory cannot be walked or the job is interrupted.
+	 */
+	public static void main(String[] args) throws Exception {
+		ReplayAnalytics analytics = new ReplayAnalytics();
+		analytics.parse(args);
+		analytics.run();
+	}
+
+	/**
+	 * Reads the options.
+	 * @param args The command line arguments.
+	 */
+	private void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--threads":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			case "--report-every":
+				reportEvery = Long.parseLong(args[++i]);
+				break;
+			default:
+				directories.add(Paths.get(args[i]));
+			}
+		}
+		if (directories.isEmpty()) {
+			throw new IllegalArgumentException("Usage: java ReplayAnalytics [--threads N] [--report-every N] DIR...");
+		}
+		// Fail before starting any thread.
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed, not " + threads);
+		}
+		if (reportEvery < 1) {
+			throw new IllegalArgumentException("Reports need at least one game in between, not " + reportEvery);
+		}
+	}
+
+	/**
+	 * Walks the directories into the queue on this thread while the workers play, then prints the totals.
+	 * @throws IOException If a directory cannot be walked.
+	 * @throws InterruptedException If interrupted while waiting for the workers.
+	 * @throws IllegalStateException If a worker failed.
+	 */
+	private void run() throws IOException, InterruptedException {
+		start = System.nanoTime();
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(new Worker(), "replay-analytics-" + i);
+			workers[i].start();
+		}
+		try {
+			for (Path directory : directories) {
+				try (Stream<Path> walk = Files.walk(directory)) {
+					for (Path file : (Iterable<Path>) walk::iterator) {
+						if (file.getFileName().toString().endsWith(".trpl") && Files.isRegularFile(file)) {
+							files.put(file);
+						}
+					}
+				}
+			}
+		} finally {
+			for (int i = 0; i < threads; i++) {
+				files.put(endOfFiles);
+			}
+			for (Thread worker : workers) {
+				worker.join();
+			}
+		}
+		if (failure != null) {
+			throw new IllegalStateException("A worker failed", failure);
+		}
+		synchronized (totals) {
+			totals.print(System.out, (System.nanoTime() - start) / 1e9);
+		}
+	}
+
+	/**
+	 * Adds partial statistics to the totals, printing them when another reportEvery games are in.
+	 */
+	private void merge(Stats partial) {
+		synchronized (totals) {
+			long before = totals.games + totals.badFiles;
+			totals.add(partial);
+			if ((before + partial.games + partial.badFiles) / reportEvery > before / reportEvery) {
+				totals.print(System.out, (System.nanoTime() - start) / 1e9);
+			}
+		}
+		partial.clear();
+	}
+
+	/**
+	 * Plays replays from the queue until it ends.
+	 */
+	private class Worker implements Runnable {
+
+		private final Stats partial = new Stats();
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(mapThreshold);
+		private GameEngine engine;
+		private long gameMillis;
+		private int lastPieces;
+
+		@Override
+		public void run() {
+			try {
+				Path file;
+				while ((file = files.take()) != endOfFiles) {
+					try {
+						play(file);
+					} catch (IOException | RuntimeException e) {
+						partial.badFiles++;
+					}
+					if (partial.games + partial.badFiles >= mergeInterval) {
+						merge(partial);
+					}
+				}
+				merge(partial);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				merge(partial);
+			} catch (Throwable e) {
+				if (failure == null) {
+					failure = e;
+				}
+				skipFiles();
+			}
+		}
+
+		/**
+		 * Takes the files left without playing them, so that walking the directories does not wait for room in the
+		 * queue forever once this worker has failed.
+		 */
+		private void skipFiles() {
+			try {
+				while (files.take() != endOfFiles) {
+					// Skip it.
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Plays one replay and adds it to the partial statistics.
+		 */
+		private void play(Path file) throws IOException {
+			ReplayPlayer player;
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				long size = channel.size();
+				if (size > mapThreshold) {
+					player = new ReplayPlayer(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), file.toString());
+				} else {
+					buffer.clear();
+					while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+						// Keep reading, a read may return less than is left.
+					}
+					buffer.flip();
+					player = new ReplayPlayer(buffer, file.toString());
+				}
+			}
+			if (engine == null || !engine.getRandomizer().getName().equals(player.getRandomizer())) {
+				engine = new GameEngine(new GameRandom(), Randomizer.create(player.getRandomizer()));
+			}
+			gameMillis = 0;
+			lastPieces = 0;
+			int moves = player.play(engine, this::afterTick);
+			partial.record(engine, moves, gameMillis);
+		}
+
+		/**
+		 * Adds up the time the game took and counts the lines of every piece locked.
+		 */
+		private void afterTick() {
+			gameMillis += engine.getDelay();
+			if (engine.getPieces() != lastPieces) {
+				lastPieces = engine.getPieces();
+				partial.clears[Integer.bitCount(engine.getClearedRows())]++;
+			}
+		}
+	}
+
+	/**
+	 * Statistics of a number of games, of fixed size however many games are added.
+	 */
+	private static final class Stats {
+		long games;
+		long badFiles;
+		long finished;
+		long moves;
+		long pieces;
+		long lines;
+		long score;
+		long millis;
+		// Pieces locked by the number of lines they cleared.
+		final long[] clears = new long[5];
+		final long[] levels = new long[maxLevel + 1];
+		// Per game, in game time.
+		final Histogram piecesPerMinute = new Histogram();
+		final Histogram movesPerMinute = new Histogram();
+		final Histogram secondsToDeath = new Histogram();
+		final Histogram scores = new Histogram();
+
+		void record(GameEngine engine, int moves, long millis) {
+			games++;
+			this.moves += moves;
+			pieces += engine.getPieces();
+			lines += engine.getTotalLines();
+			score += engine.getScore();
+			this.millis += millis;
+			levels[Math.min(engine.getLevel(), maxLevel)]++;
+			scores.record(engine.getScore());
+			if (millis > 0) {
+				piecesPerMinute.record(engine.getPieces() * 60000L / millis);
+				movesPerMinute.record(moves * 60000L / millis);
+			}
+			// A game that was restarted before it was over did not die.
+			if (engine.isGameOver()) {
+				finished++;
+				secondsToDeath.record(millis / 1000);
+			}
+		}
+
+		void add(Stats other) {
+			games += other.games;
+			badFiles += other.badFiles;
+			finished += other.finished;
+			moves += other.moves;
+			pieces += other.pieces;
+			lines += other.lines;
+			score += other.score;
+			millis += other.millis;
+			for (int i = 0; i < clears.length; i++) {
+				clears[i] += other.clears[i];
+			}
+			for (int i = 0; i < levels.length; i++) {
+				levels[i] += other.levels[i];
+			}
+			piecesPerMinute.add(other.piecesPerMinute);
+			movesPerMinute.add(other.movesPerMinute);
+			secondsToDeath.add(other.secondsToDeath);
+			scores.add(other.scores);
+		}
+
+		void clear() {
+			games = 0;
+			badFiles = 0;
+			finished = 0;
+			moves = 0;
+			pieces = 0;
+			lines = 0;
+			score = 0;
+			millis = 0;
+			Arrays.fill(clears, 0);
+			Arrays.fill(levels, 0);
+			piecesPerMinute.clear();
+			movesPerMinute.clear();
+			secondsToDeath.clear();
+			scores.clear();
+		}
+
+		void print(PrintStream out, double seconds) {
+			double hours = millis / 3.6e6;
+			long lineClears = clears[1] + clears[2] + clears[3] + clears[4];
+			StringBuilder summary = new StringBuilder();
+			summary.append(String.format(Locale.ROOT,
+					"games            %d (%d over, %d bad files) in %.1f s, %.0f games/s%n", games, finished, badFiles,
+					seconds, games / Math.max(seconds, 1e-9)));
+			summary.append(String.format(Locale.ROOT, "played           %.1f hours, %d pieces, %d lines%n", hours,
+					pieces, lines));
+			summary.append(String.format(Locale.ROOT, "pieces/s         %.3f overall, per game p50 %.3f p90 %.3f%n",
+					pieces / Math.max(millis / 1000.0, 1e-9), piecesPerMinute.getPercentile(50) / 60.0,
+					piecesPerMinute.getPercentile(90) / 60.0));
+			summary.append(String.format(Locale.ROOT, "inputs/s         %.3f overall, per game p50 %.3f p90 %.3f%n",
+					moves / Math.max(millis / 1000.0, 1e-9), movesPerMinute.getPercentile(50) / 60.0,
+					movesPerMinute.getPercentile(90) / 60.0));
+			summary.append(String.format(Locale.ROOT,
+					"tetris rate      %.2f%% of clears, %.2f%% of lines"
+							+ " (singles %d doubles %d triples %d tetrises %d)%n",
+					100.0 * clears[4] / Math.max(lineClears, 1), 400.0 * clears[4] / Math.max(lines, 1), clears[1],
+					clears[2], clears[3], clears[4]));
+			summary.append(String.format(Locale.ROOT, "score            mean %.1f p50 %d p90 %d p99 %d max %d%n",
+					(double) score / Math.max(games, 1), scores.getPercentile(50), scores.getPercentile(90),
+					scores.getPercentile(99), scores.getMax()));
+			summary.append(String.format(Locale.ROOT,
+					"time to death    mean %.1f s p10 %d p50 %d p90 %d p99 %d max %d s%n", secondsToDeath.getMean(),
+					secondsToDeath.getPercentile(10), secondsToDeath.getPercentile(50),
+					secondsToDeath.getPercentile(90), secondsToDeath.getPercentile(99), secondsToDeath.getMax()));
+			summary.append("levels          ");
+			for (int level = 1; level <= maxLevel; level++) {
+				if (levels[level] > 0) {
+					summary.append(' ').append(level).append(':').append(levels[level]);
+				}
+			}
+			out.println(summary);
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/**
+ * Plays a replay file written by ReplayRecorder. The file is memory mapped, or read into memory by the caller, and
+ * the game is driven through a GameEngine as fast as it goes, or one tick at a time for showing it.
+ *
+ * Usage: java ReplayPlayer [--render] FILE...
+ * With --render the pieces come from the randomizer of the first file.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.awt.BorderLayout;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+
+public class ReplayPlayer {
+
+	// All movements.
+	private static final Constants.Movement[] movements = Constants.Movement.values();
+
+	// Fields.
+	private final ByteBuffer data;
+	private final long seed;
+	private final String randomizer;
+
+	/**
+	 * Constructor for object ReplayPlayer. Maps the file and reads its header.
+	 * @param file The replay file.
+	 * @throws IOException If the file cannot be read or is not a replay.
+	 */
+	public ReplayPlayer(Path file) throws IOException {
+		this(map(file), file.toString());
+	}
+
+	/**
+	 * Constructor for object ReplayPlayer. Reads the header of a replay already in memory. The buffer is played from
+	 * its position, so it must not be changed while the player is used.
+	 * @param data The replay, from its position to its limit.
+	 * @param name The name of the replay in error messages.
+	 * @throws IOException If the data is not a replay.
+	 */
+	public ReplayPlayer(ByteBuffer data, String name) throws IOException {
+		this.data = data.slice();
+		if (this.data.remaining() < 13 || this.data.getInt() != ReplayRecorder.magic) {
+			throw new IOException("Not a replay: " + name);
+		}
+		byte version = this.data.get();
+		if (version < 1 || version > ReplayRecorder.version) {
+			throw new IOException("Unsupported replay version: " + name);
+		}
+		seed = this.data.getLong();
+		if (version == 1) {
+			randomizer = "uniform";
+		} else {
+			char[] chars = new char[this.data.hasRemaining() ? this.data.get() & 0xFF : 0];
+			if (this.data.remaining() < chars.length) {
+				throw new IOException("Replay is truncated: " + name);
+			}
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = (char) this.data.get();
+			}
+			randomizer = new String(chars);
+		}
+	}
+
+	/**
+	 * Maps a whole file read only.
+	 */
+	private static ByteBuffer map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * Returns the seed of the game.
+	 * @return The seed.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns the name of the randomizer that picked the pieces, see Randomizer.create.
+	 * @return The name of the randomizer.
+	 */
+	public String getRandomizer() {
+		return randomizer;
+	}
+
+	/**
+	 * Plays the game from the beginning as fast as possible.
+	 * @param engine The engine to play it on. It is seeded and started.
+	 * @return The number of moves made.
+	 * @throws IOException If the replay is truncated.
+	 */
+	public int play(GameEngine engine) throws IOException {
+		return play(engine, null);
+	}
+
+	/**
+	 * Plays the game from the beginning.
+	 * @param engine The engine to play it on. It is seeded and started, and must use the randomizer of the replay.
+	 * @param afterTick Run after every gravity tick, once the monitor of the engine is released again, so that it may
+	 *            wait without holding up painting. May be null.
+	 * @return The number of moves made.
+	 * @throws IOException If the replay is truncated.
+	 */
+	public int play(GameEngine engine, Runnable afterTick) throws IOException {
+		if (!engine.getRandomizer().getName().equals(randomizer)) {
+			throw new IllegalArgumentException("Replay needs the " + randomizer + " randomizer, the engine uses "
+					+ engine.getRandomizer().getName());
+		}
+		ByteBuffer in = data.duplicate();
+		synchronized (engine) {
+			engine.setSeed(seed);
+			engine.start();
+		}
+		int tick = 0;
+		int moves = 0;
+		while (true) {
+			long value = readVarint(in);
+			int kind = (int) (value & 7);
+			tick += (int) (value >>> 3);
+			while (engine.getTicks() < tick && !engine.isGameOver()) {
+				synchronized (engine) {
+					engine.tick();
+				}
+				if (afterTick != null) {
+					afterTick.run();
+				}
+			}
+			if (kind == ReplayRecorder.endMarker) {
+				return moves;
+			}
+			synchronized (engine) {
+				engine.step(movements[kind]);
+			}
+			moves++;
+		}
+	}
+
+	private static long readVarint(ByteBuffer in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (!in.hasRemaining()) {
+				throw new IOException("Replay is truncated");
+			}
+			byte b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint in replay");
+	}
+
+	/**
+	 * Main method. Plays every file headless and prints its result, or shows them in a window with --render.
+	 * @param args The replay files, optionally preceded by --render.
+	 * @throws Exception If a file cannot be played.
+	 */
+	public static void main(String[] args) throws Exception {
+		boolean render = args.length > 0 && args[0].equals("--render");
+		GameEngine engine = null;
+		Board board = null;
+		if (render) {
+			// The board picks its randomizer from the property, take the one of the first replay.
+			if (args.length > 1) {
+				System.setProperty("tetris.randomizer", new ReplayPlayer(Paths.get(args[1])).getRandomizer());
+			}
+			final Board shown = new Board(null);
+			board = shown;
+			SwingUtilities.invokeAndWait(new Runnable() {
+				@Override
+				public void run() {
+					JFrame frame = new JFrame("Tetris replay");
+					frame.add(shown, BorderLayout.CENTER);
+					frame.setSize(400, 880);
+					frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+					frame.setLocationRelativeTo(null);
+					frame.setVisible(true);
+				}
+			});
+			engine = board.getEngine();
+		}
+		long start = System.nanoTime();
+		long ticks = 0;
+		for (int i = render ? 1 : 0; i < args.length; i++) {
+			ReplayPlayer player = new ReplayPlayer(Paths.get(args[i]));
+			if (board == null && (engine == null || !engine.getRandomizer().getName().equals(player.getRandomizer()))) {
+				engine = new GameEngine(new GameRandom(), Randomizer.create(player.getRandomizer()));
+			}
+			final Board shown = board;
+			final GameEngine played = engine;
+			player.play(engine, shown == null ? null : new Runnable() {
+				@Override
+				public void run() {
+					// One frame per tick, painted by the event dispatch thread while this one waits for as long as the
+					// tick lasted in the game.
+					int delay;
+					synchronized (played) {
+						delay = played.getDelay();
+					}
+					shown.repaint();
+					try {
+						Thread.sleep(delay);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			ticks += engine.getTicks();
+			System.out.println(args[i] + ": score " + engine.getScore() + " level " + engine.getLevel() + " lines "
+					+ engine.getTotalLines() + " pieces " + engine.getPieces() + " ticks " + engine.getTicks());
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format(java.util.Locale.ROOT, "%.1f ticks/s", ticks / seconds));
+	}
+}
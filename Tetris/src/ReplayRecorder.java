@@ -0,0 +1,161 @@
+/**
+ * Records a game as the seed of its pieces and the moves made, so that it can be played again exactly.
+ *
+ * A replay file starts with the magic bytes TRPL, a version byte, the seed as 8 bytes and the name of the randomizer
+ * as a length byte followed by ASCII (version 1 files have no name and used the uniform randomizer). Then follows one varint per
+ * move: the gravity ticks since the previous move shifted left 3 bits, or'ed with the ordinal of the movement. The last
+ * varint has the low bits set to 7 and holds the ticks from the last move to the end of the game.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class ReplayRecorder {
+
+	// Format of the file.
+	static final int magic = 0x5452504C;
+	static final byte version = 2;
+	static final int endMarker = 7;
+
+	// Number of ints save writes: the number of the recording, whether it is going on, its size and last tick.
+	static final int stateSize = 4;
+
+	// Fields.
+	private ByteBuffer buffer = ByteBuffer.allocate(4096);
+	private int lastTick;
+	private boolean recording;
+	private int recordings;
+
+	/**
+	 * Starts a new recording, dropping anything recorded before.
+	 * @param seed The seed of the game.
+	 * @param randomizer The name of the randomizer picking the pieces.
+	 */
+	public void begin(long seed, String randomizer) {
+		buffer.clear();
+		buffer.putInt(magic);
+		buffer.put(version);
+		buffer.putLong(seed);
+		buffer.put((byte) randomizer.length());
+		for (int i = 0; i < randomizer.length(); i++) {
+			buffer.put((byte) randomizer.charAt(i));
+		}
+		lastTick = 0;
+		recording = true;
+		recordings++;
+	}
+
+	/**
+	 * Records a move.
+	 * @param tick The gravity tick the move was made at.
+	 * @param movement The movement.
+	 */
+	public void record(int tick, Constants.Movement movement) {
+		if (recording) {
+			putVarint(((long) (tick - lastTick) << 3) | movement.ordinal());
+			lastTick = tick;
+		}
+	}
+
+	/**
+	 * Ends the recording.
+	 * @param tick The gravity tick the game ended at.
+	 */
+	public void finish(int tick) {
+		if (recording) {
+			putVarint(((long) (tick - lastTick) << 3) | endMarker);
+			recording = false;
+		}
+	}
+
+	/**
+	 * Returns true between begin and finish.
+	 * @return true if recording, false otherwise.
+	 */
+	public boolean isRecording() {
+		return recording;
+	}
+
+	/**
+	 * Writes the finished recording to a file, replacing it if it exists.
+	 * @param file The file to write.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public void write(Path file) throws IOException {
+		ByteBuffer data = buffer.duplicate();
+		data.flip();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (data.hasRemaining()) {
+				channel.write(data);
+			}
+		}
+	}
+
+	/**
+	 * Writes how far the recording has come to an array without allocating, for rollback, see GameEngine.save.
+	 * @param to The array to write to.
+	 * @param at The index of the first of stateSize ints to write.
+	 */
+	public void save(int[] to, int at) {
+		to[at] = recordings;
+		to[at + 1] = recording ? 1 : 0;
+		to[at + 2] = buffer.position();
+		to[at + 3] = lastTick;
+	}
+
+	/**
+	 * Writes the state of an engine without a recorder, which no recording can be rolled back to.
+	 * @param to The array to write to.
+	 * @param at The index of the first of stateSize ints to write.
+	 */
+	static void saveNone(int[] to, int at) {
+		to[at] = -1;
+		to[at + 1] = 0;
+		to[at + 2] = 0;
+		to[at + 3] = 0;
+	}
+
+	/**
+	 * Takes back everything recorded after a state written by save. A state of another recording, or of none, stops
+	 * recording instead, since the moves recorded can no longer be played back.
+	 * @param from The array to read from.
+	 * @param at The index of the first of stateSize ints to read.
+	 */
+	public void restore(int[] from, int at) {
+		if (from[at] == recordings && from[at + 1] == 1) {
+			buffer.position(from[at + 2]);
+			lastTick = from[at + 3];
+			recording = true;
+		} else {
+			recording = false;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes recorded.
+	 * @return The size of the recording.
+	 */
+	public int size() {
+		return buffer.position();
+	}
+
+	private void putVarint(long value) {
+		if (buffer.remaining() < 10) {
+			ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+			buffer.flip();
+			larger.put(buffer);
+			buffer = larger;
+		}
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ * One game hosted by GameServer. Owns the engine of the game, which is the only one that decides what a move does,
+ * and the buffers of its connection. Only ever used by the ServerWorker thread it belongs to.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+public class ServerSession {
+
+	// All movements.
+	private static final Constants.Movement[] movements = Constants.Movement.values();
+
+	// Fields.
+	private final SocketChannel channel;
+	private final SelectionKey key;
+	private final GameEngine engine = new GameEngine(new GameRandom());
+	private final ByteBuffer in = ByteBuffer.allocate(1024);
+	private final ByteBuffer out = ByteBuffer.allocate(16 * 1024);
+	private final TimerWheel<ServerSession> wheel;
+	private final int timer;
+	private boolean playing;
+
+	// The place of the session in the list of its worker, -1 once closed. Kept by the worker.
+	int index = -1;
+
+	/**
+	 * Constructor for object ServerSession.
+	 * @param channel The connection of the client.
+	 * @param key The key of the connection in the selector of the worker.
+	 * @param wheel The timer wheel of the worker, running the gravity of the game.
+	 */
+	public ServerSession(SocketChannel channel, SelectionKey key, TimerWheel<ServerSession> wheel) {
+		this.channel = channel;
+		this.key = key;
+		this.wheel = wheel;
+		timer = wheel.add(this);
+	}
+
+	/**
+	 * Reads what the client sent and handles every complete message.
+	 * @return false if the client closed the connection or broke the protocol, true otherwise.
+	 * @throws IOException If reading fails.
+	 */
+	public boolean read() throws IOException {
+		if (channel.read(in) < 0) {
+			return false;
+		}
+		in.flip();
+		try {
+			while (in.hasRemaining()) {
+				int size = Protocol.clientMessageSize(in.get(in.position()));
+				if (size < 0) {
+					return false;
+				}
+				if (in.remaining() < size) {
+					break;
+				}
+				if (!handle(in.get())) {
+					return false;
+				}
+			}
+		} finally {
+			in.compact();
+		}
+		return flush();
+	}
+
+	/**
+	 * Handles one message, its type already read.
+	 * @return false if the message is invalid or there is no room to answer it.
+	 */
+	private boolean handle(byte type) {
+		if (out.remaining() < Protocol.ackSize) {
+			// The client does not read its answers.
+			return false;
+		}
+		if (type == Protocol.start) {
+			engine.setSeed(in.getLong());
+			engine.start();
+			playing = true;
+			wheel.schedule(timer, System.nanoTime() + engine.getDelay() * 1000000L);
+			putAck(0, true);
+			return true;
+		}
+		int sequence = in.getInt();
+		int movement = in.get();
+		if (movement < 0 || movement >= movements.length) {
+			return false;
+		}
+		putAck(sequence, playing && engine.step(movements[movement]));
+		return true;
+	}
+
+	private void putAck(int sequence, boolean accepted) {
+		out.put(Protocol.ack);
+		out.putInt(sequence);
+		out.put((byte) (accepted ? 1 : 0));
+		out.putInt(engine.getScore());
+		out.putInt(engine.getPieces());
+	}
+
+	/**
+	 * Makes the game fall one row, called by the timer wheel when it is due, and schedules the next fall with the delay
+	 * of the level the game is at then. Tells the client when the game ends.
+	 * @param deadline When the fall was due, in System.nanoTime. The next one is due a delay later, however late this
+	 * one runs.
+	 * @return false if the game ended and the message could not be sent, true otherwise.
+	 * @throws IOException If writing fails.
+	 */
+	public boolean fall(long deadline) throws IOException {
+		if (!playing) {
+			return true;
+		}
+		engine.tick();
+		if (engine.isGameOver()) {
+			playing = false;
+			if (out.remaining() < Protocol.gameOverSize) {
+				return false;
+			}
+			out.put(Protocol.gameOver);
+			out.putInt(engine.getScore());
+			return flush();
+		}
+		wheel.schedule(timer, deadline + engine.getDelay() * 1000000L);
+		return true;
+	}
+
+	/**
+	 * Writes as much of the pending output as the connection takes, and asks the selector to tell when it takes more.
+	 * @return true.
+	 * @throws IOException If writing fails.
+	 */
+	public boolean flush() throws IOException {
+		if (out.position() == 0) {
+			return true;
+		}
+		out.flip();
+		channel.write(out);
+		out.compact();
+		key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		return true;
+	}
+
+	/**
+	 * Closes the connection.
+	 */
+	public void close() {
+		wheel.remove(timer);
+		key.cancel();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// Already gone.
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/**
+ * A thread of GameServer. Serves its share of the connections on one selector and runs the gravity of all their games
+ * on a timer wheel of its own between the reads, so a session is only ever touched by this thread and the workers
+ * share no locks. Every game falls when it is due rather than on the next of fixed steps, and the lag of the falls is
+ * reported once a second.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class ServerWorker implements Runnable, TimerWheel.Handler<ServerSession> {
+
+	// Length of a tick of the timer wheel, and how often the lag is reported, in nanoseconds.
+	private static final long tickNanos = 1000000;
+	private static final long reportNanos = 1000000000L;
+
+	// Fields.
+	private final Selector selector;
+	private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<SocketChannel>();
+	private final ArrayList<ServerSession> sessions = new ArrayList<ServerSession>();
+	private final TimerWheel<ServerSession> wheel = new TimerWheel<ServerSession>(tickNanos, System.nanoTime());
+	private final Histogram lag = new Histogram();
+	private volatile boolean running = true;
+	private volatile int sessionCount;
+
+	/**
+	 * Constructor for object ServerWorker.
+	 * @throws IOException If the selector cannot be opened.
+	 */
+	public ServerWorker() throws IOException {
+		selector = Selector.open();
+	}
+
+	/**
+	 * Hands a new connection to this worker. Called by the accepting thread.
+	 * @param channel The connection.
+	 */
+	public void add(SocketChannel channel) {
+		accepted.add(channel);
+		selector.wakeup();
+	}
+
+	/**
+	 * Stops the worker, closing all its connections.
+	 */
+	public void stop() {
+		running = false;
+		selector.wakeup();
+	}
+
+	/**
+	 * Returns the number of connections served.
+	 * @return The number of sessions.
+	 */
+	public int getSessions() {
+		return sessionCount;
+	}
+
+	/**
+	 * Adds the lag of the falls over the last whole second, how long after they were due they ran, in nanoseconds.
+	 * @param to The histogram to add to.
+	 */
+	public void addLag(Histogram to) {
+		synchronized (lag) {
+			to.add(lag);
+		}
+	}
+
+	@Override
+	public void run() {
+		long nextReport = System.nanoTime() + reportNanos;
+		try {
+			while (running) {
+				register();
+				long wait = wheel.getNextTick() - System.nanoTime();
+				if (wait >= 1000000) {
+					selector.select(wait / 1000000);
+				} else {
+					selector.selectNow();
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					ServerSession session = (ServerSession) key.attachment();
+					if (!serve(session, key)) {
+						close(session);
+					}
+				}
+				long now = System.nanoTime();
+				wheel.advance(now, this);
+				if (now >= nextReport) {
+					// Only the report is shared, the wheel records into its own histogram.
+					synchronized (lag) {
+						lag.clear();
+						lag.add(wheel.getLag());
+					}
+					wheel.getLag().clear();
+					nextReport = now + reportNanos;
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Server worker failed: " + e);
+		} finally {
+			for (ServerSession session : sessions) {
+				session.close();
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				// Closing anyway.
+			}
+		}
+	}
+
+	/**
+	 * Registers the connections handed over since the last round.
+	 */
+	private void register() {
+		SocketChannel channel;
+		while ((channel = accepted.poll()) != null) {
+			try {
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+				ServerSession session = new ServerSession(channel, key, wheel);
+				key.attach(session);
+				session.index = sessions.size();
+				sessions.add(session);
+			} catch (IOException e) {
+				// The client is gone already, drop only its connection.
+				try {
+					channel.close();
+				} catch (IOException closing) {
+					// Closing anyway.
+				}
+			}
+		}
+		sessionCount = sessions.size();
+	}
+
+	private boolean serve(ServerSession session, SelectionKey key) {
+		try {
+			if (!key.isValid()) {
+				return false;
+			}
+			if (key.isWritable() && !session.flush()) {
+				return false;
+			}
+			return !key.isReadable() || session.read();
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public void expired(int timer, ServerSession session, long deadline) {
+		boolean open;
+		try {
+			open = session.fall(deadline);
+		} catch (IOException e) {
+			open = false;
+		}
+		if (!open) {
+			close(session);
+		}
+	}
+
+	/**
+	 * Closes a session and removes it from the list by moving the last one into its place.
+	 */
+	private void close(ServerSession session) {
+		if (session.index < 0) {
+			return;
+		}
+		session.close();
+		ServerSession last = sessions.remove(sessions.size() - 1);
+		if (last != session) {
+			sessions.set(session.index, last);
+			last.index = session.index;
+		}
+		session.index = -1;
+		sessionCount = sessions.size();
+	}
+}
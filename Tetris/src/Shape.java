@@ -1,144 +1,133 @@
 /**
- * Describes a shape (a comination of blocks) in the teris game.
- * 
+ * Describes a shape (a comination of blocks) in the teris game. There is one shared, immutable instance per type
+ * holding precomputed tables of its four rotations within a square bounding box, and of the wall kicks tried when
+ * a rotation collides.
+ *
  * @author Fredrik Ollinen Johansson
  */
 
 public class Shape {
 
+	// Kicks tried when rotating, as (x, y) with y pointing down, indexed by [rotation][direction][test].
+	// Direction 0 rotates right and direction 1 rotates left. Follows the Super Rotation System.
+	private static final int[][][][] kicksJLSTZ = {
+			{ { { 0, 0 }, { -1, 0 }, { -1, -1 }, { 0, 2 }, { -1, 2 } },
+					{ { 0, 0 }, { 1, 0 }, { 1, -1 }, { 0, 2 }, { 1, 2 } } },
+			{ { { 0, 0 }, { 1, 0 }, { 1, 1 }, { 0, -2 }, { 1, -2 } },
+					{ { 0, 0 }, { 1, 0 }, { 1, 1 }, { 0, -2 }, { 1, -2 } } },
+			{ { { 0, 0 }, { 1, 0 }, { 1, -1 }, { 0, 2 }, { 1, 2 } },
+					{ { 0, 0 }, { -1, 0 }, { -1, -1 }, { 0, 2 }, { -1, 2 } } },
+			{ { { 0, 0 }, { -1, 0 }, { -1, 1 }, { 0, -2 }, { -1, -2 } },
+					{ { 0, 0 }, { -1, 0 }, { -1, 1 }, { 0, -2 }, { -1, -2 } } } };
+	private static final int[][][][] kicksStraight = {
+			{ { { 0, 0 }, { -2, 0 }, { 1, 0 }, { -2, 1 }, { 1, -2 } },
+					{ { 0, 0 }, { -1, 0 }, { 2, 0 }, { -1, -2 }, { 2, 1 } } },
+			{ { { 0, 0 }, { -1, 0 }, { 2, 0 }, { -1, -2 }, { 2, 1 } },
+					{ { 0, 0 }, { 2, 0 }, { -1, 0 }, { 2, -1 }, { -1, 2 } } },
+			{ { { 0, 0 }, { 2, 0 }, { -1, 0 }, { 2, -1 }, { -1, 2 } },
+					{ { 0, 0 }, { 1, 0 }, { -2, 0 }, { 1, 2 }, { -2, -1 } } },
+			{ { { 0, 0 }, { 1, 0 }, { -2, 0 }, { 1, 2 }, { -2, -1 } },
+					{ { 0, 0 }, { -2, 0 }, { 1, 0 }, { -2, 1 }, { 1, -2 } } } };
+	private static final int[][][][] kicksSquare = {
+			{ { { 0, 0 } }, { { 0, 0 } } }, { { { 0, 0 } }, { { 0, 0 } } },
+			{ { { 0, 0 } }, { { 0, 0 } } }, { { { 0, 0 } }, { { 0, 0 } } } };
+
+	// The shared instances, indexed by the ordinal of the type.
+	private static final Shape[] shapes = new Shape[Constants.Type.values().length];
+
+	static {
+		shapes[Constants.Type.Straight.ordinal()] = new Shape(Constants.Type.Straight,
+				new String[] { "....", "####", "....", "...." }, -1, 3, kicksStraight);
+		shapes[Constants.Type.L.ordinal()] = new Shape(Constants.Type.L,
+				new String[] { "..#", "###", "..." }, 0, 3, kicksJLSTZ);
+		shapes[Constants.Type.RevL.ordinal()] = new Shape(Constants.Type.RevL,
+				new String[] { "#..", "###", "..." }, 0, 3, kicksJLSTZ);
+		shapes[Constants.Type.T.ordinal()] = new Shape(Constants.Type.T,
+				new String[] { ".#.", "###", "..." }, 0, 3, kicksJLSTZ);
+		shapes[Constants.Type.S.ordinal()] = new Shape(Constants.Type.S,
+				new String[] { ".##", "##.", "..." }, 0, 3, kicksJLSTZ);
+		shapes[Constants.Type.Z.ordinal()] = new Shape(Constants.Type.Z,
+				new String[] { "##.", ".##", "..." }, 0, 3, kicksJLSTZ);
+		shapes[Constants.Type.Square.ordinal()] = new Shape(Constants.Type.Square,
+				new String[] { "##", "##" }, 0, 4, kicksSquare);
+	}
+
 	// Fields.
-	private Constants.Type type;
-	private int[][] rotationMatrixRight;
-	private int[][] rotationMatrixLeft;
-	private Coordinate[] coordinates;
-	private Coordinate center;
+	private final Constants.Type type;
+	private final int[][] offsetY;
+	private final int[][] offsetX;
+	private final int[][] rowMasks;
+	private final int[][] columnBottoms;
+	private final int[][][][] kicks;
+	private final int spawnY;
+	private final int spawnX;
 
 	/**
-	 * Constructor for object Shape. Will instantiate the coordinates on the top
-	 * of the board.
-	 * 
+	 * Constructor for object Shape. Builds the tables of every rotation by turning the spawn rotation right within its box.
+	 *
 	 * @param type
 	 *            The type of the shape as defined in Constants.
+	 * @param box
+	 *            The spawn rotation, one string per row of the box with '#' for a block.
+	 * @param spawnY
+	 *            The row of the top of the box when spawned.
+	 * @param spawnX
+	 *            The column of the left of the box when spawned.
+	 * @param kicks
+	 *            The kick table of the shape.
 	 */
-	public Shape(Constants.Type type) {
+	private Shape(Constants.Type type, String[] box, int spawnY, int spawnX, int[][][][] kicks) {
 		this.type = type;
-		coordinates = new Coordinate[4];
-		rotationMatrixRight = new int[2][2];
-		rotationMatrixRight[0][0] = 0;
-		rotationMatrixRight[0][1] = 1;
-		rotationMatrixRight[1][0] = -1;
-		rotationMatrixRight[1][1] = 0;
-		rotationMatrixLeft = new int[2][2];
-		rotationMatrixLeft[0][0] = 0;
-		rotationMatrixLeft[0][1] = -1;
-		rotationMatrixLeft[1][0] = 1;
-		rotationMatrixLeft[1][1] = 0;
-		switch (type) {
-		case Straight:
-			coordinates[0] = new Coordinate(0, 5);
-			coordinates[1] = new Coordinate(1, 5);
-			coordinates[2] = new Coordinate(2, 5);
-			coordinates[3] = new Coordinate(3, 5);
-			center = coordinates[1];
-			break;
-		case L:
-			coordinates[0] = new Coordinate(0, 4);
-			coordinates[1] = new Coordinate(1, 4);
-			coordinates[2] = new Coordinate(2, 4);
-			coordinates[3] = new Coordinate(2, 5);
-			center = coordinates[1];
-			break;
-		case RevL:
-			coordinates[0] = new Coordinate(0, 5);
-			coordinates[1] = new Coordinate(1, 5);
-			coordinates[2] = new Coordinate(2, 5);
-			coordinates[3] = new Coordinate(2, 4);
-			center = coordinates[1];
-			break;
-		case T:
-			coordinates[0] = new Coordinate(0, 4);
-			coordinates[1] = new Coordinate(1, 4);
-			coordinates[2] = new Coordinate(2, 4);
-			coordinates[3] = new Coordinate(1, 5);
-			center = coordinates[1];
-			break;
-		case S:
-			coordinates[0] = new Coordinate(1, 5);
-			coordinates[1] = new Coordinate(1, 6);
-			coordinates[2] = new Coordinate(2, 4);
-			coordinates[3] = new Coordinate(2, 5);
-			center = coordinates[0];
-			break;
-		case Z:
-			coordinates[0] = new Coordinate(1, 4);
-			coordinates[1] = new Coordinate(1, 5);
-			coordinates[2] = new Coordinate(2, 5);
-			coordinates[3] = new Coordinate(2, 6);
-			center = coordinates[1];
-			break;
-		case Square:
-			coordinates[0] = new Coordinate(0, 4);
-			coordinates[1] = new Coordinate(0, 5);
-			coordinates[2] = new Coordinate(1, 4);
-			coordinates[3] = new Coordinate(1, 5);
-			center = coordinates[0]; // Should not be used.
-			break;
-		default:
-			break;
+		this.spawnY = spawnY;
+		this.spawnX = spawnX;
+		this.kicks = kicks;
+		int n = box.length;
+		offsetY = new int[4][4];
+		offsetX = new int[4][4];
+		rowMasks = new int[4][n];
+		columnBottoms = new int[4][n];
+		int i = 0;
+		for (int y = 0; y < n; y++) {
+			for (int x = 0; x < n; x++) {
+				if (box[y].charAt(x) == '#') {
+					offsetY[0][i] = y;
+					offsetX[0][i] = x;
+					i++;
+				}
+			}
+		}
+		// Rotating right within the box maps (y, x) to (x, n - 1 - y).
+		for (int r = 0; r < 4; r++) {
+			for (i = 0; i < 4; i++) {
+				if (r > 0) {
+					offsetY[r][i] = offsetX[r - 1][i];
+					offsetX[r][i] = n - 1 - offsetY[r - 1][i];
+				}
+				rowMasks[r][offsetY[r][i]] |= 1 << offsetX[r][i];
+			}
+			for (int x = 0; x < n; x++) {
+				columnBottoms[r][x] = -1;
+			}
+			for (i = 0; i < 4; i++) {
+				columnBottoms[r][offsetX[r][i]] = Math.max(columnBottoms[r][offsetX[r][i]], offsetY[r][i]);
+			}
 		}
 	}
 
 	/**
-	 * Constructor for object Shape.
-	 * 
+	 * Returns the shared shape of a type.
+	 *
 	 * @param type
 	 *            The type of the shape as defined in Constants.
-	 * @param coordinates
-	 *            The coordinates of the shape within the board.
+	 * @return The shape of that type.
 	 */
-	public Shape(Constants.Type type, Coordinate[] coordinates) {
-		this.type = type;
-		this.coordinates = coordinates;
-		rotationMatrixRight = new int[2][2];
-		rotationMatrixRight[0][0] = 0;
-		rotationMatrixRight[0][1] = 1;
-		rotationMatrixRight[1][0] = -1;
-		rotationMatrixRight[1][1] = 0;
-		rotationMatrixLeft = new int[2][2];
-		rotationMatrixLeft[0][0] = 0;
-		rotationMatrixLeft[0][1] = -1;
-		rotationMatrixLeft[1][0] = 1;
-		rotationMatrixLeft[1][1] = 0;
-		switch (type) {
-		case Straight:
-			center = coordinates[1];
-			break;
-		case L:
-			center = coordinates[1];
-			break;
-		case RevL:
-			center = coordinates[1];
-			break;
-		case T:
-			center = coordinates[1];
-			break;
-		case S:
-			center = coordinates[0];
-			break;
-		case Z:
-			center = coordinates[1];
-			break;
-		case Square:
-			center = coordinates[0]; // Should not be used.
-			break;
-		default:
-			break;
-		}
+	public static Shape of(Constants.Type type) {
+		return shapes[type.ordinal()];
 	}
 
 	/**
 	 * Returns the type of this shape as defined in constants.
-	 * 
+	 *
 	 * @return The type of this shape.
 	 */
 	public Constants.Type getType() {
@@ -146,76 +135,155 @@ public class Shape {
 	}
 
 	/**
-	 * Returns an array of the coordinates of this shape.
-	 * 
-	 * @return An array of the coordinates of this shape.
+	 * Returns the number of blocks in this shape.
+	 *
+	 * @return The number of blocks.
 	 */
-	public Coordinate[] getCoordinates() {
-		return coordinates;
+	public int size() {
+		return offsetY[0].length;
 	}
 
 	/**
-	 * Returns the center of the shape.
-	 * 
-	 * @return The center of the shape.
+	 * Returns the row of a block within the box.
+	 *
+	 * @param rotation
+	 *            The rotation, 0 to 3 steps right of the spawn rotation.
+	 * @param i
+	 *            The index of the block.
+	 * @return The row offset of the block.
 	 */
-	public Coordinate getCenter() {
-		return center;
+	public int getOffsetY(int rotation, int i) {
+		return offsetY[rotation][i];
 	}
 
 	/**
-	 * Rotates the shape right and returns the new shape.
-	 * @return The new shape rotated right.
+	 * Returns the column of a block within the box.
+	 *
+	 * @param rotation
+	 *            The rotation, 0 to 3 steps right of the spawn rotation.
+	 * @param i
+	 *            The index of the block.
+	 * @return The column offset of the block.
 	 */
-	public Shape rotateRight() {
-		Shape shape;
-		switch (type) {
-		case Square:
-			shape = new Shape(type, coordinates);
-			break;
-		default:
-			Coordinate[] newCoordinates = new Coordinate[4];
-			for (int i = 0; i < coordinates.length; i++) {
-				newCoordinates[i] = new Coordinate(
-						((coordinates[i].getY() - center.getY())
-								* rotationMatrixRight[0][0] + (coordinates[i].getX() - center.getX())
-								* rotationMatrixRight[1][0])
-								+ center.getY(),
-						((coordinates[i].getY() - center.getY())
-								* rotationMatrixRight[0][1] + (coordinates[i]
-								.getX() - center.getX())
-								* rotationMatrixRight[1][1]) + center.getX());
-			}
-			shape = new Shape(type, newCoordinates);
-		}
-		return shape;
-	}
-
-	/**
-	 * Rotates the shape left and returns the new shape.
-	 * @return The new shape rotated left.
-	 */
-	public Shape rotateLeft() {
-		Shape shape;
-		switch (type) {
-		case Square:
-			shape = new Shape(type, coordinates);
-			break;
-		default:
-			Coordinate[] newCoordinates = new Coordinate[4];
-			for (int i = 0; i < coordinates.length; i++) {
-				newCoordinates[i] = new Coordinate(
-						((coordinates[i].getY() - center.getY())
-								* rotationMatrixLeft[0][0] + (coordinates[i].getX() - center.getX())
-								* rotationMatrixLeft[1][0])
-								+ center.getY(),
-						((coordinates[i].getY() - center.getY())
-								* rotationMatrixLeft[0][1] + (coordinates[i]
-								.getX() - center.getX())
-								* rotationMatrixLeft[1][1]) + center.getX());
-			}
-			shape = new Shape(type, newCoordinates);
-		}
-		return shape;
+	public int getOffsetX(int rotation, int i) {
+		return offsetX[rotation][i];
+	}
+
+	/**
+	 * Returns the number of rows (and columns) of the box.
+	 *
+	 * @return The size of the box.
+	 */
+	public int getBoxSize() {
+		return rowMasks[0].length;
+	}
+
+	/**
+	 * Returns the blocks in a row of the box as a mask, bit x set for column x of the box.
+	 *
+	 * @param rotation
+	 *            The rotation, 0 to 3 steps right of the spawn rotation.
+	 * @param row
+	 *            The row of the box.
+	 * @return The mask of the row.
+	 */
+	public int getRowMask(int rotation, int row) {
+		return rowMasks[rotation][row];
+	}
+
+	/**
+	 * Returns the lowest block in a column of the box.
+	 *
+	 * @param rotation
+	 *            The rotation, 0 to 3 steps right of the spawn rotation.
+	 * @param column
+	 *            The column of the box.
+	 * @return The row of the lowest block, or -1 if the column is empty.
+	 */
+	public int getColumnBottom(int rotation, int column) {
+		return columnBottoms[rotation][column];
+	}
+
+	/**
+	 * Returns the number of kicks tried for a rotation, the first one being no kick at all.
+	 *
+	 * @param rotation
+	 *            The rotation before rotating.
+	 * @param direction
+	 *            0 when rotating right, 1 when rotating left.
+	 * @return The number of kicks.
+	 */
+	public int getKicks(int rotation, int direction) {
+		return kicks[rotation][direction].length;
+	}
+
+	/**
+	 * Returns how far a kick moves the box right.
+	 *
+	 * @param rotation
+	 *            The rotation before rotating.
+	 * @param direction
+	 *            0 when rotating right, 1 when rotating left.
+	 * @param test
+	 *            The index of the kick.
+	 * @return The columns to move.
+	 */
+	public int getKickX(int rotation, int direction, int test) {
+		return kicks[rotation][direction][test][0];
+	}
+
+	/**
+	 * Returns how far a kick moves the box down.
+	 *
+	 * @param rotation
+	 *            The rotation before rotating.
+	 * @param direction
+	 *            0 when rotating right, 1 when rotating left.
+	 * @param test
+	 *            The index of the kick.
+	 * @return The rows to move.
+	 */
+	public int getKickY(int rotation, int direction, int test) {
+		return kicks[rotation][direction][test][1];
+	}
+
+	/**
+	 * Returns the row of the top of the box when spawned.
+	 *
+	 * @return The row of the box.
+	 */
+	public int getSpawnY() {
+		return spawnY;
+	}
+
+	/**
+	 * Returns the column of the left of the box when spawned.
+	 *
+	 * @return The column of the box.
+	 */
+	public int getSpawnX() {
+		return spawnX;
+	}
+
+	/**
+	 * Returns the rotation after rotating right.
+	 *
+	 * @param rotation
+	 *            The current rotation.
+	 * @return The rotation rotated right.
+	 */
+	public static int rotateRight(int rotation) {
+		return (rotation + 1) & 3;
+	}
+
+	/**
+	 * Returns the rotation after rotating left.
+	 *
+	 * @param rotation
+	 *            The current rotation.
+	 * @return The rotation rotated left.
+	 */
+	public static int rotateLeft(int rotation) {
+		return (rotation + 3) & 3;
 	}
 }
@@ -0,0 +1,277 @@
+/**
+ * Command line runner for headless games. Plays a number of seeded games on all cores with a move policy and reports
+ * the throughput of the engine together with the distribution of the results.
+ *
+ * Usage: java Simulation [--games N] [--threads N] [--seed N] [--policy random|placement|evaluator|beam]
+ *                        [--weights W,W,...] [--randomizer bag|uniform] [--moves-per-tick N] [--max-pieces N]
+ *                        [--csv FILE] [--json FILE]
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Simulation {
+
+	// Highest level a game can reach, see GameEngine.
+	private static final int maxLevel = 11;
+
+	// Options.
+	private int games = 1000;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long seed = 1;
+	private String policy = "placement";
+	private String randomizer = "bag";
+	private double[] weights;
+	private int movesPerTick = 40;
+	private int maxPieces = 100000;
+	private String csv;
+	private String json;
+
+	// Results, one slot per game. Every slot is written by one worker only and read after all workers are joined.
+	private int[] scores;
+	private int[] levels;
+	private int[] lines;
+	private int[] pieces;
+	private long elapsed;
+
+	/**
+	 * Main method.
+	 * @param args Options, see the class comment.
+	 * @throws Exception If the simulation is interrupted or the output cannot be written.
+	 */
+	public static void main(String[] args) throws Exception {
+		Simulation simulation = new Simulation();
+		simulation.parse(args);
+		simulation.run();
+		simulation.report();
+	}
+
+	/**
+	 * Reads the options.
+	 * @param args The command line arguments.
+	 */
+	private void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + option);
+			}
+			String value = args[++i];
+			switch (option) {
+			case "--games":
+				games = Integer.parseInt(value);
+				break;
+			case "--threads":
+				threads = Integer.parseInt(value);
+				break;
+			case "--seed":
+				seed = Long.parseLong(value);
+				break;
+			case "--policy":
+				policy = value;
+				break;
+			case "--weights":
+				weights = BoardEvaluator.parseWeights(value);
+				break;
+			case "--randomizer":
+				randomizer = value;
+				break;
+			case "--moves-per-tick":
+				movesPerTick = Integer.parseInt(value);
+				break;
+			case "--max-pieces":
+				maxPieces = Integer.parseInt(value);
+				break;
+			case "--csv":
+				csv = value;
+				break;
+			case "--json":
+				json = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+		// Fail before starting any thread.
+		if (games < 1) {
+			throw new IllegalArgumentException("At least one game is needed, not " + games);
+		}
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed, not " + threads);
+		}
+		createPolicy(policy, new Random(), weights);
+		Randomizer.create(randomizer);
+	}
+
+	/**
+	 * Creates a move policy by name.
+	 * @param name The name of the policy.
+	 * @param rand The random generator of the policy.
+	 * @param weights The weights of the evaluator policy, null for the default ones.
+	 * @return The policy.
+	 */
+	static MovePolicy createPolicy(String name, Random rand, double[] weights) {
+		switch (name) {
+		case "random":
+			return new RandomPolicy(rand);
+		case "placement":
+			return new PlacementPolicy(rand);
+		case "evaluator":
+			return new EvaluatorPolicy(weights == null ? new BoardEvaluator() : new BoardEvaluator(weights));
+		case "beam":
+			// The games already run on all cores, so every game searches on its own thread.
+			return new BeamPolicy(BeamPolicy.defaultBeamWidth, BeamPolicy.defaultDepth, BeamPolicy.defaultBudgetNanos,
+					weights, null);
+		default:
+			throw new IllegalArgumentException("Unknown policy " + name);
+		}
+	}
+
+	/**
+	 * Plays all games, spread over the worker threads.
+	 * @throws InterruptedException If interrupted while waiting for the workers.
+	 */
+	private void run() throws InterruptedException {
+		scores = new int[games];
+		levels = new int[games];
+		lines = new int[games];
+		pieces = new int[games];
+		final AtomicInteger nextGame = new AtomicInteger();
+		Thread[] workers = new Thread[threads];
+		long start = System.nanoTime();
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					play(nextGame);
+				}
+			}, "simulation-" + i);
+			workers[i].start();
+		}
+		for (int i = 0; i < threads; i++) {
+			workers[i].join();
+		}
+		elapsed = System.nanoTime() - start;
+	}
+
+	/**
+	 * The loop of one worker. It owns its engine, policy and random generators and takes games until none are left.
+	 * @param nextGame The index of the next game to play, shared by all workers.
+	 */
+	private void play(AtomicInteger nextGame) {
+		Random engineRand = new GameRandom();
+		Random policyRand = new Random();
+		GameEngine engine = new GameEngine(engineRand, Randomizer.create(randomizer));
+		MovePolicy movePolicy = createPolicy(policy, policyRand, weights);
+		int game;
+		while ((game = nextGame.getAndIncrement()) < games) {
+			engineRand.setSeed(seed + game);
+			policyRand.setSeed(~(seed + game));
+			engine.start();
+			while (!engine.isGameOver() && engine.getPieces() <= maxPieces) {
+				for (int i = 0; i < movesPerTick; i++) {
+					Constants.Movement movement = movePolicy.nextMove(engine);
+					if (movement == null) {
+						break;
+					}
+					engine.step(movement);
+				}
+				engine.tick();
+			}
+			scores[game] = engine.getScore();
+			levels[game] = engine.getLevel();
+			lines[game] = engine.getTotalLines();
+			pieces[game] = engine.getPieces();
+		}
+	}
+
+	/**
+	 * Prints the summary and writes the files asked for.
+	 * @throws IOException If a file cannot be written.
+	 */
+	private void report() throws IOException {
+		long totalPieces = 0;
+		long totalLines = 0;
+		long totalScore = 0;
+		int[] levelCounts = new int[maxLevel + 1];
+		for (int i = 0; i < games; i++) {
+			totalPieces += pieces[i];
+			totalLines += lines[i];
+			totalScore += scores[i];
+			levelCounts[Math.min(levels[i], maxLevel)]++;
+		}
+		int[] sorted = Arrays.copyOf(scores, games);
+		Arrays.sort(sorted);
+		double seconds = elapsed / 1e9;
+
+		StringBuilder summary = new StringBuilder();
+		summary.append(String.format(Locale.ROOT, "games            %d on %d threads in %.3f s%n", games, threads, seconds));
+		summary.append(String.format(Locale.ROOT, "games/s          %.1f%n", games / seconds));
+		summary.append(String.format(Locale.ROOT, "pieces/s         %.1f%n", totalPieces / seconds));
+		summary.append(String.format(Locale.ROOT, "lines/game       %.3f%n", (double) totalLines / games));
+		summary.append(String.format(Locale.ROOT, "score            mean %.1f min %d p50 %d p90 %d p99 %d max %d%n",
+				(double) totalScore / games, sorted[0], percentile(sorted, 50), percentile(sorted, 90),
+				percentile(sorted, 99), sorted[games - 1]));
+		summary.append("levels          ");
+		for (int level = 1; level <= maxLevel; level++) {
+			if (levelCounts[level] > 0) {
+				summary.append(' ').append(level).append(':').append(levelCounts[level]);
+			}
+		}
+		System.out.println(summary);
+
+		if (csv != null) {
+			try (PrintWriter out = new PrintWriter(csv, "UTF-8")) {
+				out.println("game,seed,score,level,lines,pieces");
+				for (int i = 0; i < games; i++) {
+					out.println(i + "," + (seed + i) + "," + scores[i] + "," + levels[i] + "," + lines[i] + ","
+							+ pieces[i]);
+				}
+			}
+		}
+		if (json != null) {
+			try (PrintWriter out = new PrintWriter(json, "UTF-8")) {
+				out.println("{");
+				out.println("  \"games\": " + games + ",");
+				out.println("  \"threads\": " + threads + ",");
+				out.println("  \"seed\": " + seed + ",");
+				out.println("  \"policy\": \"" + policy + "\",");
+				out.println("  \"randomizer\": \"" + randomizer + "\",");
+				out.println(String.format(Locale.ROOT, "  \"seconds\": %.6f,", seconds));
+				out.println(String.format(Locale.ROOT, "  \"gamesPerSecond\": %.3f,", games / seconds));
+				out.println(String.format(Locale.ROOT, "  \"piecesPerSecond\": %.3f,", totalPieces / seconds));
+				out.println(String.format(Locale.ROOT, "  \"linesPerGame\": %.6f,", (double) totalLines / games));
+				out.println(String.format(Locale.ROOT,
+						"  \"score\": {\"mean\": %.3f, \"min\": %d, \"p50\": %d, \"p90\": %d, \"p99\": %d, \"max\": %d},",
+						(double) totalScore / games, sorted[0], percentile(sorted, 50), percentile(sorted, 90),
+						percentile(sorted, 99), sorted[games - 1]));
+				StringBuilder levelJson = new StringBuilder();
+				for (int level = 1; level <= maxLevel; level++) {
+					if (levelJson.length() > 0) {
+						levelJson.append(", ");
+					}
+					levelJson.append('"').append(level).append("\": ").append(levelCounts[level]);
+				}
+				out.println("  \"levels\": {" + levelJson + "}");
+				out.println("}");
+			}
+		}
+	}
+
+	/**
+	 * Returns a percentile of sorted values, nearest rank.
+	 * @param sorted The values, sorted.
+	 * @param percent The percentile.
+	 * @return The value at that percentile.
+	 */
+	private static int percentile(int[] sorted, int percent) {
+		int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+}
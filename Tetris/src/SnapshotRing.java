@@ -0,0 +1,93 @@
+/**
+ * The last frames of a game for rollback. Every frame holds a snapshot of the engine, see GameEngine.save, and the
+ * phase of the gravity timer, in one flat array allocated up front, so capturing and restoring never allocates.
+ * Frame f is kept in slot f modulo the number of slots until frame f plus that number overwrites it.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+public class SnapshotRing {
+
+	// Every slot starts with the number of its frame and the timer phase, two ints each, followed by the snapshot.
+	private static final int header = 4;
+	private static final int slotSize = header + GameEngine.snapshotSize;
+
+	// Fields.
+	private final int[] data;
+	private final int frames;
+
+	/**
+	 * Constructor for object SnapshotRing.
+	 * @param frames The number of frames kept.
+	 */
+	public SnapshotRing(int frames) {
+		if (frames <= 0) {
+			throw new IllegalArgumentException("Can not keep " + frames + " frames");
+		}
+		this.frames = frames;
+		data = new int[frames * slotSize];
+		// No slot holds a frame yet.
+		for (int i = 0; i < frames; i++) {
+			data[i * slotSize] = -1;
+			data[i * slotSize + 1] = -1;
+		}
+	}
+
+	/**
+	 * Saves a frame, overwriting the frame that was kept in its slot.
+	 * @param engine The engine to save.
+	 * @param frame The number of the frame, 0 or more.
+	 * @param timerPhase The phase of the gravity timer.
+	 */
+	public void capture(GameEngine engine, long frame, long timerPhase) {
+		if (frame < 0) {
+			throw new IllegalArgumentException("Frame " + frame);
+		}
+		int at = slot(frame);
+		engine.save(data, at + header);
+		data[at] = (int) (frame >>> 32);
+		data[at + 1] = (int) frame;
+		data[at + 2] = (int) (timerPhase >>> 32);
+		data[at + 3] = (int) timerPhase;
+	}
+
+	/**
+	 * Returns if a frame is still kept.
+	 * @param frame The number of the frame.
+	 * @return true if the frame can be restored, false otherwise.
+	 */
+	public boolean contains(long frame) {
+		if (frame < 0) {
+			return false;
+		}
+		int at = slot(frame);
+		return (((long) data[at] << 32) | (data[at + 1] & 0xFFFFFFFFL)) == frame;
+	}
+
+	/**
+	 * Restores a frame. The frames after it are kept, until they are captured again.
+	 * @param engine The engine to restore, with the same randomizer as the engine saved.
+	 * @param frame The number of the frame.
+	 * @return The phase of the gravity timer.
+	 */
+	public long restore(GameEngine engine, long frame) {
+		if (!contains(frame)) {
+			throw new IllegalArgumentException("Frame " + frame + " is not kept");
+		}
+		int at = slot(frame);
+		engine.restore(data, at + header);
+		return ((long) data[at + 2] << 32) | (data[at + 3] & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Returns the number of frames kept.
+	 * @return The number of frames.
+	 */
+	public int getFrames() {
+		return frames;
+	}
+
+	private int slot(long frame) {
+		return (int) (frame % frames) * slotSize;
+	}
+}
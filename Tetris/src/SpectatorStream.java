@@ -0,0 +1,266 @@
+/**
+ * Broadcasts a game to spectators as a stream of frames. After every move or tick only what changed is sent: the
+ * falling piece, the cells locked, the rows cleared and the score. A keyframe with the whole board is sent every
+ * keyframeInterval frames, when a spectator joins, and whenever the changes cannot be told apart, like a restart.
+ *
+ * Frames are encoded into one reusable buffer and passed to every subscriber in turn, so a subscriber has to copy what
+ * it wants to keep. All numbers are big-endian.
+ *
+ * keyframe  type, frame (4 bytes), score (4), lines (2), level (1), game over (1), piece (4, see below),
+ *           the 200 cells as type ordinals packed two to a byte, row by row.
+ * delta     type, frame (4 bytes), flags (1), then the sections of the flags set, in this order:
+ *           piece   type ordinal, rotation, row of the box (signed), column of the box. Void when there is none.
+ *           locked  count (1), then row * width + column (1) and type ordinal (1) per cell.
+ *           cleared mask of the removed rows (4), numbered before the rows above moved down.
+ *           score   score (4), lines (2), level (1).
+ *           Game over has its own flag and no section.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.nio.ByteBuffer;
+
+public class SpectatorStream {
+
+	/**
+	 * Receives the frames of a stream.
+	 */
+	public interface Subscriber {
+
+		/**
+		 * Handles one frame. The buffer is reused for the next frame, so copy anything to keep.
+		 * @param frame The frame, from its position to its limit.
+		 */
+		void frame(ByteBuffer frame);
+	}
+
+	// Frame types and the flags of a delta.
+	static final byte keyframe = 1;
+	static final byte delta = 2;
+	static final int pieceFlag = 1;
+	static final int lockedFlag = 2;
+	static final int clearedFlag = 4;
+	static final int scoreFlag = 8;
+	static final int gameOverFlag = 16;
+
+	// Most blocks a single lock adds.
+	private static final int maxLocked = 4;
+
+	// Board size, and the layout of a row mask, see GameEngine.getRow.
+	private static final int height = GameEngine.height;
+	private static final int width = GameEngine.width;
+	private static final int wall = GameEngine.wall;
+	private static final int emptyRow = GameEngine.emptyRow;
+
+	// Fields.
+	private final GameEngine engine;
+	private final int keyframeInterval;
+	private final ByteBuffer buffer = ByteBuffer.allocate(32 + height * width / 2);
+	private volatile Subscriber[] subscribers = new Subscriber[0];
+	private volatile boolean keyframeNeeded = true;
+	private int frame;
+	private int sinceKeyframe;
+
+	// What the spectators have been sent.
+	private final int[] rows = new int[height];
+	private int boardChanges;
+	private int totalLines;
+	private int score;
+	private int level;
+	private boolean gameOver;
+	private Constants.Type pieceType;
+	private int pieceRotation;
+	private int pieceY;
+	private int pieceX;
+
+	/**
+	 * Constructor for object SpectatorStream.
+	 * @param engine The game to broadcast.
+	 * @param keyframeInterval The number of frames between keyframes.
+	 */
+	public SpectatorStream(GameEngine engine, int keyframeInterval) {
+		this.engine = engine;
+		this.keyframeInterval = keyframeInterval;
+	}
+
+	/**
+	 * Adds a subscriber. It is sent a keyframe with the next frame. May be called from any thread.
+	 * @param subscriber The subscriber.
+	 */
+	public synchronized void subscribe(Subscriber subscriber) {
+		Subscriber[] larger = java.util.Arrays.copyOf(subscribers, subscribers.length + 1);
+		larger[subscribers.length] = subscriber;
+		subscribers = larger;
+		keyframeNeeded = true;
+	}
+
+	/**
+	 * Removes a subscriber. May be called from any thread.
+	 * @param subscriber The subscriber.
+	 */
+	public synchronized void unsubscribe(Subscriber subscriber) {
+		for (int i = 0; i < subscribers.length; i++) {
+			if (subscribers[i] == subscriber) {
+				Subscriber[] smaller = new Subscriber[subscribers.length - 1];
+				System.arraycopy(subscribers, 0, smaller, 0, i);
+				System.arraycopy(subscribers, i + 1, smaller, i, smaller.length - i);
+				subscribers = smaller;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Sends what changed since the last frame to all subscribers. Call after every move and tick of the engine, while
+	 * holding its monitor. Nothing is encoded while there are no subscribers.
+	 */
+	public void update() {
+		Subscriber[] subscribers = this.subscribers;
+		if (subscribers.length == 0) {
+			keyframeNeeded = true;
+			return;
+		}
+		buffer.clear();
+		if (keyframeNeeded || ++sinceKeyframe >= keyframeInterval || !encodeDelta()) {
+			encodeKeyframe();
+		}
+		if (buffer.position() == 0) {
+			return;
+		}
+		buffer.flip();
+		for (Subscriber subscriber : subscribers) {
+			buffer.position(0);
+			subscriber.frame(buffer);
+		}
+	}
+
+	/**
+	 * Encodes the changes since the last frame, if they can be told from the board changes of the engine. Leaves the
+	 * buffer empty if nothing changed.
+	 * @return false if a keyframe is needed instead.
+	 */
+	private boolean encodeDelta() {
+		int changes = engine.getBoardChanges() - boardChanges;
+		if (changes > 1) {
+			return false;
+		}
+		buffer.put(delta);
+		buffer.putInt(frame + 1);
+		int flagsAt = buffer.position();
+		buffer.put((byte) 0);
+		int flags = 0;
+
+		Piece piece = engine.getFallingPiece();
+		if (piece.getShape() == null || piece.getType() != pieceType || piece.getRotation() != pieceRotation || piece.getY() != pieceY
+				|| piece.getX() != pieceX) {
+			flags |= pieceFlag;
+			putPiece();
+		}
+		if (changes == 1) {
+			if (engine.getTotalLines() != totalLines) {
+				// A line clear, everything above the cleared rows moves down.
+				int cleared = engine.getClearedRows();
+				int target = height - 1;
+				for (int i = height - 1; i >= 0; i--) {
+					if ((cleared & (1 << i)) == 0) {
+						rows[target--] = rows[i];
+					}
+				}
+				for (; target >= 0; target--) {
+					rows[target] = emptyRow;
+				}
+				flags |= clearedFlag;
+				buffer.putInt(cleared);
+			} else {
+				// A lock, the new blocks are the bits the engine has that were not sent.
+				flags |= lockedFlag;
+				int countAt = buffer.position();
+				buffer.put((byte) 0);
+				int count = 0;
+				for (int y = 0; y < height; y++) {
+					int added = engine.getRow(y) & ~rows[y];
+					for (; added != 0; added &= added - 1) {
+						if (count == maxLocked) {
+							// More than one piece, a load.
+							return false;
+						}
+						int x = Integer.numberOfTrailingZeros(added) - wall;
+						buffer.put((byte) (y * width + x));
+						buffer.put((byte) engine.getCell(y, x).ordinal());
+						count++;
+					}
+					rows[y] |= added;
+				}
+				buffer.put(countAt, (byte) count);
+			}
+			for (int y = 0; y < height; y++) {
+				if (rows[y] != engine.getRow(y)) {
+					// Not a single lock or clear, a restart or a load.
+					return false;
+				}
+			}
+			boardChanges = engine.getBoardChanges();
+		}
+		if (engine.getScore() != score || engine.getTotalLines() != totalLines || engine.getLevel() != level) {
+			flags |= scoreFlag;
+			putScore();
+		}
+		if (engine.isGameOver() != gameOver) {
+			gameOver = engine.isGameOver();
+			if (!gameOver) {
+				return false;
+			}
+			flags |= gameOverFlag;
+		}
+		if (flags == 0) {
+			buffer.clear();
+			return true;
+		}
+		buffer.put(flagsAt, (byte) flags);
+		frame++;
+		return true;
+	}
+
+	/**
+	 * Encodes the whole game and remembers it as sent.
+	 */
+	private void encodeKeyframe() {
+		buffer.clear();
+		buffer.put(keyframe);
+		buffer.putInt(++frame);
+		putScore();
+		buffer.put((byte) (engine.isGameOver() ? 1 : 0));
+		putPiece();
+		for (int y = 0; y < height; y++) {
+			rows[y] = engine.getRow(y);
+			for (int x = 0; x < width; x += 2) {
+				buffer.put((byte) (engine.getCell(y, x).ordinal() << 4 | engine.getCell(y, x + 1).ordinal()));
+			}
+		}
+		boardChanges = engine.getBoardChanges();
+		gameOver = engine.isGameOver();
+		keyframeNeeded = false;
+		sinceKeyframe = 0;
+	}
+
+	private void putPiece() {
+		Piece piece = engine.getFallingPiece();
+		pieceType = piece.getShape() == null ? Constants.Type.Void : piece.getType();
+		pieceRotation = piece.getRotation();
+		pieceY = piece.getY();
+		pieceX = piece.getX();
+		buffer.put((byte) pieceType.ordinal());
+		buffer.put((byte) pieceRotation);
+		buffer.put((byte) pieceY);
+		buffer.put((byte) pieceX);
+	}
+
+	private void putScore() {
+		score = engine.getScore();
+		totalLines = engine.getTotalLines();
+		level = engine.getLevel();
+		buffer.putInt(score);
+		buffer.putShort((short) totalLines);
+		buffer.put((byte) level);
+	}
+}
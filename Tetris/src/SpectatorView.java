@@ -0,0 +1,198 @@
+/**
+ * A spectator's copy of a game, rebuilt from the frames of a SpectatorStream. Deltas that arrive before the first
+ * keyframe, or after a frame was missed, are skipped until the next keyframe.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class SpectatorView implements SpectatorStream.Subscriber {
+
+	// All types.
+	private static final Constants.Type[] types = Constants.Type.values();
+
+	// Board size.
+	private static final int height = GameEngine.height;
+	private static final int width = GameEngine.width;
+
+	// Fields.
+	private final byte[] cells = new byte[height * width];
+	private boolean synced;
+	private int frame;
+	private int score;
+	private int lines;
+	private int level;
+	private boolean gameOver;
+	private Constants.Type pieceType = Constants.Type.Void;
+	private int pieceRotation;
+	private int pieceY;
+	private int pieceX;
+	private long frames;
+	private long bytes;
+
+	@Override
+	public void frame(ByteBuffer frame) {
+		frames++;
+		bytes += frame.remaining();
+		byte type = frame.get();
+		int number = frame.getInt();
+		if (type == SpectatorStream.keyframe) {
+			getScore(frame);
+			gameOver = frame.get() != 0;
+			getPiece(frame);
+			for (int i = 0; i < cells.length; i += 2) {
+				int pair = frame.get();
+				cells[i] = (byte) ((pair >> 4) & 15);
+				cells[i + 1] = (byte) (pair & 15);
+			}
+			synced = true;
+		} else if (synced && number == this.frame + 1) {
+			int flags = frame.get();
+			if ((flags & SpectatorStream.pieceFlag) != 0) {
+				getPiece(frame);
+			}
+			if ((flags & SpectatorStream.lockedFlag) != 0) {
+				for (int count = frame.get() & 0xFF; count > 0; count--) {
+					int cell = frame.get() & 0xFF;
+					cells[cell] = frame.get();
+				}
+			}
+			if ((flags & SpectatorStream.clearedFlag) != 0) {
+				int cleared = frame.getInt();
+				int target = height - 1;
+				for (int y = height - 1; y >= 0; y--) {
+					if ((cleared & (1 << y)) == 0) {
+						if (target != y) {
+							System.arraycopy(cells, y * width, cells, target * width, width);
+						}
+						target--;
+					}
+				}
+				Arrays.fill(cells, 0, (target + 1) * width, (byte) Constants.Type.Void.ordinal());
+			}
+			if ((flags & SpectatorStream.scoreFlag) != 0) {
+				getScore(frame);
+			}
+			if ((flags & SpectatorStream.gameOverFlag) != 0) {
+				gameOver = true;
+			}
+		} else {
+			synced = false;
+			return;
+		}
+		this.frame = number;
+	}
+
+	private void getScore(ByteBuffer frame) {
+		score = frame.getInt();
+		lines = frame.getShort();
+		level = frame.get();
+	}
+
+	private void getPiece(ByteBuffer frame) {
+		pieceType = types[frame.get()];
+		pieceRotation = frame.get();
+		pieceY = frame.get();
+		pieceX = frame.get();
+	}
+
+	/**
+	 * Returns true once a keyframe has been received and no frame has been missed since.
+	 * @return true if the view is up to date, false otherwise.
+	 */
+	public boolean isSynced() {
+		return synced;
+	}
+
+	/**
+	 * Returns the type of a cell.
+	 * @param y The row.
+	 * @param x The column.
+	 * @return The type of the block there, Void if empty.
+	 */
+	public Constants.Type getCell(int y, int x) {
+		return types[cells[y * width + x]];
+	}
+
+	/**
+	 * Returns the type of the falling piece.
+	 * @return The type, Void if there is none.
+	 */
+	public Constants.Type getPieceType() {
+		return pieceType;
+	}
+
+	/**
+	 * Returns the rotation of the falling piece.
+	 * @return The rotation.
+	 */
+	public int getPieceRotation() {
+		return pieceRotation;
+	}
+
+	/**
+	 * Returns the row of the top of the box of the falling piece.
+	 * @return The row.
+	 */
+	public int getPieceY() {
+		return pieceY;
+	}
+
+	/**
+	 * Returns the column of the left of the box of the falling piece.
+	 * @return The column.
+	 */
+	public int getPieceX() {
+		return pieceX;
+	}
+
+	/**
+	 * Returns the score.
+	 * @return The score.
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * Returns the number of lines cleared.
+	 * @return The number of lines.
+	 */
+	public int getLines() {
+		return lines;
+	}
+
+	/**
+	 * Returns the level.
+	 * @return The level.
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Returns true if the game is over.
+	 * @return true if the game is over, false otherwise.
+	 */
+	public boolean isGameOver() {
+		return gameOver;
+	}
+
+	/**
+	 * Returns the number of frames received.
+	 * @return The number of frames.
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * Returns the number of bytes received.
+	 * @return The number of bytes.
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+}
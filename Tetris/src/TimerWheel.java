@@ -0,0 +1,420 @@
+/**
+ * A hierarchical timer wheel, for running gravity on thousands of games from one thread. Every timer sits in a slot of
+ * one of four wheels of 64 slots each, the first wheel one tick per slot and each wheel above 64 times coarser, so
+ * scheduling, cancelling and rescheduling a timer are a few array writes whatever the number of timers. Whenever the
+ * first wheel comes round, the next slot of the wheel above is spread over the wheels below it.
+ *
+ * Timers are numbered and kept in plain arrays that only grow, so nothing is allocated once they are added. A timer
+ * never fires early, and how late it fires is recorded as the tick lag. A wheel is not thread safe: give every thread
+ * its own and shard the timers over them.
+ *
+ * Usage: java TimerWheel [--boards N] [--threads N] [--seconds N] [--tick-micros N]
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+public class TimerWheel<T> {
+
+	/**
+	 * Runs the timers that are due.
+	 */
+	public interface Handler<T> {
+
+		/**
+		 * Runs a timer. It is no longer scheduled, so the handler may schedule it again, cancel others or remove it.
+		 * @param timer The number of the timer.
+		 * @param item The item of the timer.
+		 * @param deadline When the timer was due, in System.nanoTime.
+		 */
+		void expired(int timer, T item, long deadline);
+	}
+
+	// Number of wheels and the slots of each, as a number of bits.
+	private static final int levels = 4;
+	private static final int slotBits = 6;
+	private static final int slots = 1 << slotBits;
+	private static final int slotMask = slots - 1;
+
+	// Ticks the wheels span. A timer due later is parked in the last slot and moved on when it comes round.
+	private static final long span = 1L << (levels * slotBits);
+
+	// Fields.
+	private final long tickNanos;
+	private final long origin;
+	private final int[] heads = new int[levels * slots];
+	private final Histogram lag = new Histogram();
+	private long tick;
+	private int size;
+	private int free = -1;
+	private int scheduled;
+
+	// Per timer, the item, the links of the slot list it is in, the slot or -1, and when it is due.
+	private Object[] items = new Object[0];
+	private int[] next = new int[0];
+	private int[] previous = new int[0];
+	private int[] slotOf = new int[0];
+	private long[] deadlines = new long[0];
+	private long[] dueTicks = new long[0];
+
+	/**
+	 * Constructor for object TimerWheel.
+	 * @param tickNanos The length of a tick in nanoseconds, how precisely timers fire.
+	 * @param now The current System.nanoTime, the start of the first tick.
+	 */
+	public TimerWheel(long tickNanos, long now) {
+		if (tickNanos <= 0) {
+			throw new IllegalArgumentException("The tick must be positive, not " + tickNanos);
+		}
+		this.tickNanos = tickNanos;
+		origin = now;
+		Arrays.fill(heads, -1);
+	}
+
+	/**
+	 * Adds a timer, not scheduled.
+	 * @param item The item handed to the handler when the timer fires.
+	 * @return The number of the timer.
+	 */
+	public int add(T item) {
+		if (item == null) {
+			throw new NullPointerException("item");
+		}
+		int timer = free;
+		if (timer >= 0) {
+			free = next[timer];
+		} else {
+			if (size == items.length) {
+				grow(Math.max(16, size * 2));
+			}
+			timer = size++;
+		}
+		items[timer] = item;
+		slotOf[timer] = -1;
+		return timer;
+	}
+
+	/**
+	 * Removes a timer, cancelling it. Its number is reused by a later add.
+	 * @param timer The number of the timer.
+	 */
+	public void remove(int timer) {
+		cancel(timer);
+		items[timer] = null;
+		next[timer] = free;
+		free = timer;
+	}
+
+	/**
+	 * Schedules a timer, moving it if it is already scheduled. A deadline that has passed fires on the next tick.
+	 * @param timer The number of the timer.
+	 * @param deadline When the timer is due, in System.nanoTime.
+	 */
+	public void schedule(int timer, long deadline) {
+		if (items[timer] == null) {
+			throw new IllegalArgumentException("No timer " + timer);
+		}
+		cancel(timer);
+		// Rounded up, so that a timer never fires before its deadline.
+		long due = Math.floorDiv(deadline - origin + tickNanos - 1, tickNanos);
+		deadlines[timer] = deadline;
+		dueTicks[timer] = Math.max(due, tick + 1);
+		insert(timer);
+		scheduled++;
+	}
+
+	/**
+	 * Cancels a timer if it is scheduled.
+	 * @param timer The number of the timer.
+	 */
+	public void cancel(int timer) {
+		if (slotOf[timer] >= 0) {
+			unlink(timer);
+			scheduled--;
+		}
+	}
+
+	/**
+	 * Tells whether a timer is scheduled.
+	 * @param timer The number of the timer.
+	 * @return true if it is scheduled.
+	 */
+	public boolean isScheduled(int timer) {
+		return slotOf[timer] >= 0;
+	}
+
+	/**
+	 * Returns when a timer is or was last due.
+	 * @param timer The number of the timer.
+	 * @return The deadline in System.nanoTime.
+	 */
+	public long getDeadline(int timer) {
+		return deadlines[timer];
+	}
+
+	/**
+	 * Returns the number of timers scheduled.
+	 * @return The number of timers.
+	 */
+	public int getScheduled() {
+		return scheduled;
+	}
+
+	/**
+	 * Returns the lag of the timers fired, how long after their deadlines they ran, in nanoseconds. It includes up to
+	 * a tick of rounding. The histogram is the wheel's own, only use it from the thread of the wheel.
+	 * @return The histogram.
+	 */
+	public Histogram getLag() {
+		return lag;
+	}
+
+	/**
+	 * Runs all timers due by now, in the order of their ticks.
+	 * @param now The current System.nanoTime.
+	 * @param handler The handler running the timers.
+	 * @return The number of timers run.
+	 */
+	@SuppressWarnings("unchecked")
+	public int advance(long now, Handler<T> handler) {
+		long target = Math.floorDiv(now - origin, tickNanos);
+		int fired = 0;
+		while (tick < target) {
+			if (scheduled == 0) {
+				// Nothing to run, skip to the end.
+				tick = target;
+				break;
+			}
+			tick++;
+			if ((tick & slotMask) == 0) {
+				cascade(1);
+			}
+			int slot = (int) (tick & slotMask);
+			int timer;
+			// Rescheduling from the handler never lands in this slot, since it is at least a tick ahead.
+			while ((timer = heads[slot]) >= 0) {
+				unlink(timer);
+				scheduled--;
+				fired++;
+				lag.record(now - deadlines[timer]);
+				handler.expired(timer, (T) items[timer], deadlines[timer]);
+			}
+		}
+		return fired;
+	}
+
+	/**
+	 * Returns when advance should be called next. Exact when a timer is due before the first wheel comes round,
+	 * otherwise when the first wheel comes round.
+	 * @return The time in System.nanoTime.
+	 */
+	public long getNextTick() {
+		long limit = (tick | slotMask) + 1;
+		if (scheduled > 0) {
+			for (long t = tick + 1; t < limit; t++) {
+				if (heads[(int) (t & slotMask)] >= 0) {
+					return origin + t * tickNanos;
+				}
+			}
+		}
+		return origin + limit * tickNanos;
+	}
+
+	/**
+	 * Moves the timers of the current slot of a wheel to the wheels below it, emptying the wheels above first if this
+	 * one came round too.
+	 * @param level The wheel, above the first.
+	 */
+	private void cascade(int level) {
+		int index = (int) (tick >>> (level * slotBits)) & slotMask;
+		if (index == 0 && level + 1 < levels) {
+			cascade(level + 1);
+		}
+		int slot = level * slots + index;
+		int timer;
+		while ((timer = heads[slot]) >= 0) {
+			unlink(timer);
+			insert(timer);
+		}
+	}
+
+	/**
+	 * Links a timer into the slot of its due tick, which is not before the current one.
+	 */
+	private void insert(int timer) {
+		long due = dueTicks[timer];
+		long delta = due - tick;
+		int level = 0;
+		if (delta >= span) {
+			due = tick + span - 1;
+			delta = span - 1;
+		}
+		while (delta >= slots) {
+			delta >>>= slotBits;
+			level++;
+		}
+		int slot = level * slots + (int) (due >>> (level * slotBits) & slotMask);
+		int head = heads[slot];
+		next[timer] = head;
+		previous[timer] = -1;
+		if (head >= 0) {
+			previous[head] = timer;
+		}
+		heads[slot] = timer;
+		slotOf[timer] = slot;
+	}
+
+	private void unlink(int timer) {
+		int before = previous[timer];
+		int after = next[timer];
+		if (before >= 0) {
+			next[before] = after;
+		} else {
+			heads[slotOf[timer]] = after;
+		}
+		if (after >= 0) {
+			previous[after] = before;
+		}
+		slotOf[timer] = -1;
+	}
+
+	private void grow(int capacity) {
+		items = Arrays.copyOf(items, capacity);
+		next = Arrays.copyOf(next, capacity);
+		previous = Arrays.copyOf(previous, capacity);
+		slotOf = Arrays.copyOf(slotOf, capacity);
+		deadlines = Arrays.copyOf(deadlines, capacity);
+		dueTicks = Arrays.copyOf(dueTicks, capacity);
+	}
+
+	/**
+	 * Main method. Runs the gravity of many headless games, sharded over threads that each own a wheel and their
+	 * games, and reports the ticks run and their lag. The games get no moves, so they stack up and restart.
+	 * @param args Options, see the class comment.
+	 * @throws InterruptedException If interrupted while waiting for the threads.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int boards = 10000;
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		int seconds = 10;
+		long tickMicros = 1000;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "--boards":
+				boards = Integer.parseInt(args[i + 1]);
+				break;
+			case "--threads":
+				threads = Integer.parseInt(args[i + 1]);
+				break;
+			case "--seconds":
+				seconds = Integer.parseInt(args[i + 1]);
+				break;
+			case "--tick-micros":
+				tickMicros = Long.parseLong(args[i + 1]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		long end = System.nanoTime() + seconds * 1000000000L;
+		Shard[] shards = new Shard[threads];
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			// Every shard takes every threads-th board.
+			shards[i] = new Shard((boards - i + threads - 1) / threads, i, tickMicros * 1000, end);
+			workers[i] = new Thread(shards[i], "timer-wheel-" + i);
+			workers[i].start();
+		}
+		Histogram lag = new Histogram();
+		long ticks = 0;
+		long levelUps = 0;
+		long restarts = 0;
+		for (int i = 0; i < threads; i++) {
+			workers[i].join();
+			lag.add(shards[i].wheel.getLag());
+			ticks += shards[i].ticks;
+			levelUps += shards[i].levelUps;
+			restarts += shards[i].restarts;
+		}
+		System.out.println(String.format(Locale.ROOT, "boards     %d on %d threads for %d s, %d us ticks", boards,
+				threads, seconds, tickMicros));
+		System.out.println(String.format(Locale.ROOT, "ticks/s    %.1f, %d level changes, %d restarts",
+				(double) ticks / Math.max(1, seconds - 1), levelUps, restarts));
+		System.out.println(String.format(Locale.ROOT, "lag us     mean %.1f p50 %.1f p99 %.1f p99.9 %.1f max %.1f",
+				lag.getMean() / 1e3, lag.getPercentile(50) / 1e3, lag.getPercentile(99) / 1e3,
+				lag.getPercentile(99.9) / 1e3, lag.getMax() / 1e3));
+	}
+
+	/**
+	 * A thread of the main method with its own wheel and games, shared with no other thread.
+	 */
+	private static class Shard implements Runnable, Handler<GameEngine> {
+
+		// Fields.
+		private final int boards;
+		private final long seed;
+		private final long tickNanos;
+		private final long end;
+		private TimerWheel<GameEngine> wheel;
+		private long ticks;
+		private long levelUps;
+		private long restarts;
+
+		Shard(int boards, long seed, long tickNanos, long end) {
+			this.boards = boards;
+			this.seed = seed;
+			this.tickNanos = tickNanos;
+			this.end = end;
+		}
+
+		@Override
+		public void run() {
+			// The games are made by the thread that runs them, and nothing else touches them.
+			long now = System.nanoTime();
+			wheel = new TimerWheel<GameEngine>(tickNanos, now);
+			Random rand = new Random(seed);
+			for (int i = 0; i < boards; i++) {
+				GameEngine engine = new GameEngine(new GameRandom());
+				engine.setSeed(seed * boards + i);
+				engine.start();
+				int timer = wheel.add(engine);
+				// Spread the first ticks, like games started at different times.
+				wheel.schedule(timer, now + rand.nextInt(engine.getDelay()) * 1000000L);
+			}
+			// The first second warms up, leave it out of the lag.
+			long warm = now + 1000000000L;
+			boolean warming = true;
+			while ((now = System.nanoTime()) < end) {
+				wheel.advance(now, this);
+				if (warming && now >= warm) {
+					wheel.getLag().clear();
+					ticks = 0;
+					warming = false;
+				}
+				long wait = wheel.getNextTick() - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+		}
+
+		@Override
+		public void expired(int timer, GameEngine engine, long deadline) {
+			int level = engine.getLevel();
+			engine.tick();
+			ticks++;
+			if (engine.isGameOver()) {
+				engine.start();
+				restarts++;
+			} else if (engine.getLevel() != level) {
+				levelUps++;
+			}
+			// From the deadline rather than now, so that lag does not add up over the ticks of a game.
+			wheel.schedule(timer, deadline + engine.getDelay() * 1000000L);
+		}
+	}
+}
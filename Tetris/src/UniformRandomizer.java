@@ -0,0 +1,39 @@
+/**
+ * The classic randomizer. Every piece is picked independently with the same chance, exactly like the game always did.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.util.Random;
+
+public class UniformRandomizer implements Randomizer {
+
+	// The types a new piece is picked from.
+	private static final Constants.Type[] pieceTypes = { Constants.Type.Straight, Constants.Type.L, Constants.Type.RevL,
+			Constants.Type.T, Constants.Type.S, Constants.Type.Z, Constants.Type.Square };
+
+	@Override
+	public void reset() {
+	}
+
+	@Override
+	public void fill(Random rand, Constants.Type[] buffer, int offset, int count) {
+		for (int i = offset; i < offset + count; i++) {
+			buffer[i] = pieceTypes[Math.abs(rand.nextInt() % 7)];
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "uniform";
+	}
+
+	@Override
+	public long getState() {
+		return 0;
+	}
+
+	@Override
+	public void setState(long state) {
+	}
+}
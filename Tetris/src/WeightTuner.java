@@ -0,0 +1,365 @@
+/**
+ * Tunes the weights of a BoardEvaluator with the cross-entropy method. Every generation samples a population of
+ * weight vectors from a normal distribution per weight, scores each of them by the mean score of seeded headless
+ * games played with an EvaluatorPolicy, and fits the distribution to the best of them. The games of a generation are
+ * played as separate tasks in a ForkJoinPool, and all candidates play the same seeds so they are compared fairly.
+ *
+ * The state of the search is written to a checkpoint after every generation, and a run started with the same
+ * checkpoint continues where it stopped. The options that decide the games played are kept in the checkpoint too, and
+ * a run with other values for them does not continue it.
+ *
+ * Usage: java WeightTuner [--generations N] [--population N] [--elite N] [--games N] [--max-pieces N] [--noise X]
+ *                         [--seed N] [--threads N] [--randomizer bag|uniform] [--checkpoint FILE]
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class WeightTuner {
+
+	// Moves a policy may make per gravity tick, enough for any path.
+	private static final int movesPerTick = 40;
+
+	// The noise added to the distribution goes down to nothing over this many generations.
+	private static final int noiseGenerations = 50;
+
+	// Options.
+	private int generations = 50;
+	private int population = 64;
+	private int elite = 10;
+	private int games = 8;
+	private int maxPieces = 1000;
+	private double noise = 0.1;
+	private long seed = 1;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private String randomizer = "bag";
+	private Path checkpoint;
+
+	// State of the search, all of it in the checkpoint.
+	private int generation;
+	private double[] mean = new double[BoardEvaluator.features];
+	private double[] deviation = new double[BoardEvaluator.features];
+	private double[] best;
+	private double bestFitness = Double.NEGATIVE_INFINITY;
+	private final GameRandom rand = new GameRandom();
+
+	// The generation being played. Every task writes its own slot of scores.
+	private double[][] candidates;
+	private long[] scores;
+
+	/**
+	 * Main method.
+	 * @param args Options, see the class comment.
+	 * @throws IOException If the checkpoint cannot be read or written.
+	 */
+	public static void main(String[] args) throws IOException {
+		WeightTuner tuner = new WeightTuner();
+		tuner.parse(args);
+		tuner.run();
+	}
+
+	/**
+	 * Reads the options.
+	 * @param args The command line arguments.
+	 */
+	private void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + option);
+			}
+			String value = args[++i];
+			switch (option) {
+			case "--generations":
+				generations = Integer.parseInt(value);
+				break;
+			case "--population":
+				population = Integer.parseInt(value);
+				break;
+			case "--elite":
+				elite = Integer.parseInt(value);
+				break;
+			case "--games":
+				games = Integer.parseInt(value);
+				break;
+			case "--max-pieces":
+				maxPieces = Integer.parseInt(value);
+				break;
+			case "--noise":
+				noise = Double.parseDouble(value);
+				break;
+			case "--seed":
+				seed = Long.parseLong(value);
+				break;
+			case "--threads":
+				threads = Integer.parseInt(value);
+				break;
+			case "--randomizer":
+				randomizer = value;
+				break;
+			case "--checkpoint":
+				checkpoint = Paths.get(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+		// Fail before starting any thread.
+		if (population < 1) {
+			throw new IllegalArgumentException("At least one candidate is needed, not " + population);
+		}
+		if (games < 1) {
+			throw new IllegalArgumentException("At least one game is needed, not " + games);
+		}
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed, not " + threads);
+		}
+		if (!(noise > 0)) {
+			throw new IllegalArgumentException("The noise must be more than 0, not " + noise);
+		}
+		if (elite < 1 || elite > population) {
+			throw new IllegalArgumentException("The elite must be between 1 and the population " + population);
+		}
+		Randomizer.create(randomizer);
+	}
+
+	/**
+	 * Runs the generations left, starting from the checkpoint if there is one.
+	 * @throws IOException If the checkpoint cannot be read or written.
+	 */
+	private void run() throws IOException {
+		if (checkpoint != null && Files.exists(checkpoint)) {
+			load();
+			System.out.println("Continuing from generation " + generation + " of " + checkpoint);
+		} else {
+			rand.setSeed(seed);
+			Arrays.fill(deviation, 1);
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			candidates = new double[population][BoardEvaluator.features];
+			scores = new long[population * games];
+			Integer[] order = new Integer[population];
+			double[] fitness = new double[population];
+			while (generation < generations) {
+				long start = System.nanoTime();
+				for (double[] candidate : candidates) {
+					for (int f = 0; f < candidate.length; f++) {
+						candidate[f] = mean[f] + deviation[f] * gaussian();
+					}
+				}
+				pool.invoke(new Games(0, scores.length));
+				for (int c = 0; c < population; c++) {
+					long total = 0;
+					for (int g = 0; g < games; g++) {
+						total += scores[c * games + g];
+					}
+					fitness[c] = (double) total / games;
+					order[c] = c;
+				}
+				Arrays.sort(order, (a, b) -> Double.compare(fitness[b], fitness[a]));
+				if (fitness[order[0]] > bestFitness) {
+					bestFitness = fitness[order[0]];
+					best = candidates[order[0]].clone();
+				}
+				fit(order);
+				System.out.println(String.format(Locale.ROOT, "generation %d best %.1f elite %.1f in %.1f s weights %s",
+						generation, fitness[order[0]], fitness[order[elite - 1]], (System.nanoTime() - start) / 1e9,
+						format(candidates[order[0]])));
+				generation++;
+				if (checkpoint != null) {
+					save();
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		if (best != null) {
+			System.out.println(String.format(Locale.ROOT, "best %.1f --weights %s", bestFitness, format(best)));
+		}
+	}
+
+	/**
+	 * Fits the distribution to the elite, adding noise that decreases over the first generations so it does not
+	 * collapse too early.
+	 * @param order The candidates, best first.
+	 */
+	private void fit(Integer[] order) {
+		double added = noise * Math.max(0, 1 - (double) generation / noiseGenerations);
+		for (int f = 0; f < mean.length; f++) {
+			double sum = 0;
+			for (int i = 0; i < elite; i++) {
+				sum += candidates[order[i]][f];
+			}
+			mean[f] = sum / elite;
+			double squares = 0;
+			for (int i = 0; i < elite; i++) {
+				double difference = candidates[order[i]][f] - mean[f];
+				squares += difference * difference;
+			}
+			deviation[f] = Math.sqrt(squares / elite + added);
+		}
+	}
+
+	/**
+	 * Plays one game of the generation.
+	 * @param task The candidate times the number of games plus the game.
+	 * @return The score.
+	 */
+	private long play(int task) {
+		GameEngine engine = new GameEngine(new GameRandom(), Randomizer.create(randomizer));
+		MovePolicy policy = new EvaluatorPolicy(new BoardEvaluator(candidates[task / games]));
+		engine.setSeed(seed + (long) generation * games + task % games);
+		engine.start();
+		while (!engine.isGameOver() && engine.getPieces() <= maxPieces) {
+			for (int i = 0; i < movesPerTick; i++) {
+				Constants.Movement movement = policy.nextMove(engine);
+				if (movement == null) {
+					break;
+				}
+				engine.step(movement);
+			}
+			engine.tick();
+		}
+		return engine.getScore();
+	}
+
+	/**
+	 * The games of a range of tasks, split in halves down to single games so idle workers can steal them.
+	 */
+	private class Games extends RecursiveAction {
+
+		// Added to suppress warning.
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		Games(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 1) {
+				if (to > from) {
+					scores[from] = play(from);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Games(from, middle), new Games(middle, to));
+			}
+		}
+	}
+
+	/**
+	 * Returns a normally distributed number. Drawn from two uniform numbers each time, unlike Random.nextGaussian,
+	 * so the state of the random generator is all there is to save.
+	 * @return The number.
+	 */
+	private double gaussian() {
+		double u = 1 - rand.nextDouble();
+		double v = rand.nextDouble();
+		return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+	}
+
+	/**
+	 * Writes the state of the search to the checkpoint, through a temporary file so a crash never leaves half of it.
+	 * @throws IOException If the file cannot be written.
+	 */
+	private void save() throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("seed", Long.toString(seed));
+		properties.setProperty("games", Integer.toString(games));
+		properties.setProperty("population", Integer.toString(population));
+		properties.setProperty("max-pieces", Integer.toString(maxPieces));
+		properties.setProperty("randomizer", randomizer);
+		properties.setProperty("generation", Integer.toString(generation));
+		properties.setProperty("mean", format(mean, "%s"));
+		properties.setProperty("deviation", format(deviation, "%s"));
+		properties.setProperty("random", Long.toString(rand.getState()));
+		if (best != null) {
+			properties.setProperty("best", format(best, "%s"));
+			properties.setProperty("bestFitness", Double.toString(bestFitness));
+		}
+		Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+		try (Writer out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			properties.store(out, "WeightTuner checkpoint, features " + String.join(",", BoardEvaluator.featureNames));
+		}
+		Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads the state of the search from the checkpoint.
+	 * @throws IOException If the file cannot be read.
+	 */
+	private void load() throws IOException {
+		Properties properties = new Properties();
+		try (Reader in = Files.newBufferedReader(checkpoint, StandardCharsets.UTF_8)) {
+			properties.load(in);
+		}
+		checkOption(properties, "seed", Long.toString(seed));
+		checkOption(properties, "games", Integer.toString(games));
+		checkOption(properties, "population", Integer.toString(population));
+		checkOption(properties, "max-pieces", Integer.toString(maxPieces));
+		checkOption(properties, "randomizer", randomizer);
+		generation = Integer.parseInt(properties.getProperty("generation"));
+		mean = BoardEvaluator.parseWeights(properties.getProperty("mean"));
+		deviation = BoardEvaluator.parseWeights(properties.getProperty("deviation"));
+		rand.setState(Long.parseLong(properties.getProperty("random")));
+		if (properties.getProperty("best") != null) {
+			best = BoardEvaluator.parseWeights(properties.getProperty("best"));
+			bestFitness = Double.parseDouble(properties.getProperty("bestFitness"));
+		}
+		if (mean.length != BoardEvaluator.features || deviation.length != BoardEvaluator.features) {
+			throw new IOException("The checkpoint " + checkpoint + " has weights for other features");
+		}
+	}
+
+	/**
+	 * Checks that an option has the value it had when the checkpoint was written, since the search would otherwise
+	 * go on with other games.
+	 */
+	private void checkOption(Properties properties, String option, String value) {
+		String saved = properties.getProperty(option);
+		if (!value.equals(saved)) {
+			throw new IllegalArgumentException("The checkpoint " + checkpoint + " was written with --" + option + " "
+					+ saved + ", not " + value);
+		}
+	}
+
+	/**
+	 * Formats weights the way BoardEvaluator.parseWeights reads them, rounded.
+	 */
+	private static String format(double[] weights) {
+		return format(weights, "%.6f");
+	}
+
+	/**
+	 * Formats weights the way BoardEvaluator.parseWeights reads them.
+	 */
+	private static String format(double[] weights, String number) {
+		StringBuilder text = new StringBuilder();
+		for (double weight : weights) {
+			if (text.length() > 0) {
+				text.append(',');
+			}
+			text.append(String.format(Locale.ROOT, number, weight));
+		}
+		return text.toString();
+	}
+}
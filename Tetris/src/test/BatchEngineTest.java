@@ -0,0 +1,100 @@
+/**
+ * Tests of BatchEngine against GameEngine.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BatchEngineTest {
+
+	// All piece types.
+	private static final Constants.Type[] pieceTypes = { Constants.Type.Straight, Constants.Type.L,
+			Constants.Type.RevL, Constants.Type.T, Constants.Type.S, Constants.Type.Z, Constants.Type.Square };
+
+	private static final int height = GameEngine.height;
+	private static final int width = GameEngine.width;
+
+	/**
+	 * Plays the same random placements on a batch and on one GameEngine per board, starting over from garbage with
+	 * one hole per row every 50 placements, and compares every board after every placement.
+	 */
+	@Test
+	public void placementsMatchGameEngine() {
+		int boards = 64;
+		int rounds = 2000;
+		Random rand = new Random(1);
+		// Every board starts with its own garbage at the bottom.
+		int[][] garbageRows = new int[boards][height];
+		byte[][] garbageCells = new byte[boards][height * width];
+		for (int b = 0; b < boards; b++) {
+			Arrays.fill(garbageRows[b], GameEngine.emptyRow);
+			for (int y = height - rand.nextInt(9); y < height; y++) {
+				int hole = rand.nextInt(width);
+				garbageRows[b][y] = GameEngine.fullRow & ~(1 << (hole + GameEngine.wall));
+				for (int x = 0; x < width; x++) {
+					garbageCells[b][y * width + x] = (byte) (x == hole ? 0 : Constants.Type.Square.ordinal());
+				}
+			}
+		}
+		BatchEngine batch = new BatchEngine(boards);
+		GameEngine[] engines = new GameEngine[boards];
+		for (int b = 0; b < boards; b++) {
+			engines[b] = new GameEngine(new Random(b));
+		}
+		boolean[] over = new boolean[boards];
+		boolean[] placed = new boolean[boards];
+		for (int r = 0; r < rounds; r++) {
+			if (r % 50 == 0) {
+				batch.start();
+				for (int b = 0; b < boards; b++) {
+					batch.load(b, garbageRows[b]);
+					engines[b].start();
+					engines[b].load(garbageRows[b], garbageCells[b]);
+				}
+				Arrays.fill(over, false);
+			}
+			Shape shape = Shape.of(pieceTypes[rand.nextInt(pieceTypes.length)]);
+			int rotation = rand.nextInt(4);
+			int column = rand.nextInt(width + 2) - 2;
+			batch.place(shape, rotation, column, placed);
+			for (int b = 0; b < boards; b++) {
+				String at = "round " + r + " board " + b;
+				over[b] |= !engines[b].fits(shape, 0, shape.getSpawnY(), shape.getSpawnX());
+				assertEquals(at, over[b], batch.isGameOver(b));
+				assertEquals(at, !over[b] && place(engines[b], shape, rotation, column), placed[b]);
+				for (int y = 0; y < height; y++) {
+					assertEquals(at + " row " + y, engines[b].getRow(y), batch.getRow(b, y));
+				}
+				assertEquals(at, engines[b].getScore(), batch.getScore(b));
+				assertEquals(at, engines[b].getTotalLines(), batch.getTotalLines(b));
+				assertEquals(at, engines[b].getLevel(), batch.getLevel(b));
+				// The engine has spawned the next piece already.
+				assertEquals(at, engines[b].getPieces() - 1, batch.getPieces(b));
+			}
+		}
+	}
+
+	/**
+	 * Makes a placement on an engine through its moves, the way the batch does it.
+	 * @return true if the piece was dropped.
+	 */
+	private static boolean place(GameEngine engine, Shape shape, int rotation, int x) {
+		engine.setGameOver(false);
+		Piece piece = engine.getFallingPiece();
+		piece.spawn(shape.getType());
+		if (!engine.fits(shape, rotation, shape.getSpawnY(), x)) {
+			return false;
+		}
+		piece.set(rotation, shape.getSpawnY(), x);
+		engine.step(Constants.Movement.HardDrop);
+		// The tick after a lock clears the rows and spawns the next piece, whose game over is not the batch's.
+		engine.tick();
+		return true;
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * Tests of GameEngine.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GameEngineTest {
+
+	private static final int height = GameEngine.height;
+	private static final int width = GameEngine.width;
+
+	// The bit of the leftmost column, every other bit of an empty row is a wall.
+	private static final int firstColumn = firstColumn();
+
+	/**
+	 * Plays random placements, now and then loading rows that are full but for one block so that lines are cleared,
+	 * and checks the hash kept up to date against a hash of the whole board after every lock, line clear and load.
+	 */
+	@Test
+	public void hashMatchesTheWholeBoard() {
+		Random rand = new Random(1);
+		GameEngine engine = new GameEngine(new Random(1));
+		PlacementFinder finder = new PlacementFinder();
+		int[] rows = new int[height];
+		byte[] cells = new byte[height * width];
+		int locks = 0;
+		int clears = 0;
+		int loads = 0;
+		for (int game = 0; game < 50; game++) {
+			engine.start();
+			for (int piece = 0; piece < 200 && !engine.isGameOver(); piece++) {
+				if (rand.nextInt(10) == 0) {
+					for (int y = 0; y < height; y++) {
+						rows[y] = engine.getRow(y);
+						if (y >= height / 2 && rand.nextBoolean()) {
+							rows[y] = ~(firstColumn << rand.nextInt(width));
+						}
+						for (int x = 0; x < width; x++) {
+							boolean block = (rows[y] & (firstColumn << x)) != 0;
+							cells[y * width + x] = (byte) (block ? Constants.Type.Square.ordinal() : 0);
+						}
+					}
+					engine.load(rows, cells);
+					assertHash(engine, rows);
+					loads++;
+				}
+				int count = finder.find(engine);
+				if (count > 0) {
+					// The placement clearing the most lines, else the lowest of a few random ones, so that games last.
+					int best = rand.nextInt(count);
+					for (int i = 0; i < count; i++) {
+						if (lines(engine, finder, i) > lines(engine, finder, best)
+								|| (i % 4 == 0 && finder.getY(i) > finder.getY(best))) {
+							best = i;
+						}
+					}
+					Constants.Movement[] path = new Constants.Movement[finder.getPathLength(best)];
+					int length = finder.getPath(best, path);
+					for (int i = 0; i < length; i++) {
+						assertTrue(engine.step(path[i]));
+					}
+				}
+				// Down at the bottom locks the piece, the next tick clears the lines and spawns the next one.
+				while (engine.step(Constants.Movement.Down)) {
+				}
+				assertHash(engine, rows);
+				locks++;
+				if (hasFullRow(engine)) {
+					clears++;
+				}
+				engine.tick();
+				assertHash(engine, rows);
+			}
+		}
+		assertTrue("locks " + locks, locks > 1000);
+		assertTrue("clears " + clears, clears > 100);
+		assertTrue("loads " + loads, loads > 100);
+	}
+
+	private static void assertHash(GameEngine engine, int[] rows) {
+		for (int y = 0; y < height; y++) {
+			rows[y] = engine.getRow(y);
+		}
+		assertEquals(GameEngine.hash(rows, 0), engine.getHash());
+	}
+
+	/**
+	 * Returns the number of lines a placement fills.
+	 */
+	private static int lines(GameEngine engine, PlacementFinder finder, int i) {
+		Shape shape = Shape.of(finder.getType());
+		int shift = Integer.numberOfTrailingZeros(firstColumn) + finder.getX(i);
+		int lines = 0;
+		for (int r = 0; r < shape.getBoxSize(); r++) {
+			int mask = shape.getRowMask(finder.getRotation(i), r);
+			if (mask != 0 && (engine.getRow(finder.getY(i) + r) | (mask << shift)) == -1) {
+				lines++;
+			}
+		}
+		return lines;
+	}
+
+	private static int firstColumn() {
+		GameEngine engine = new GameEngine(new Random(0));
+		engine.start();
+		return Integer.lowestOneBit(~engine.getRow(0));
+	}
+
+	private static boolean hasFullRow(GameEngine engine) {
+		for (int y = 0; y < height; y++) {
+			if (engine.getRow(y) == -1) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
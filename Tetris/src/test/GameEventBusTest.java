@@ -0,0 +1,180 @@
+/**
+ * Tests of GameEventBus.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class GameEventBusTest {
+
+	/**
+	 * Plays headless games publishing to a bus with two listeners and checks that both saw exactly what the engines
+	 * did.
+	 */
+	@Test
+	public void listenersSeeEveryEvent() throws InterruptedException {
+		int games = 5;
+		GameEventBus bus = new GameEventBus(4096);
+		Tally first = new Tally();
+		Tally second = new Tally();
+		bus.subscribe(first);
+		bus.subscribe(second);
+		long lines = 0;
+		long score = 0;
+		long pieces = 0;
+		for (int game = 0; game < games; game++) {
+			GameEngine engine = new GameEngine(new GameRandom());
+			engine.setEvents(bus);
+			play(engine, game);
+			lines += engine.getTotalLines();
+			score += engine.getScore();
+			pieces += engine.getPieces();
+		}
+		bus.flush();
+		bus.unsubscribe(first);
+		bus.unsubscribe(second);
+		assertTrue("lines " + lines, lines > 0);
+		for (Tally tally : new Tally[] { first, second }) {
+			tally.score += tally.gameScore;
+			assertEquals(0, tally.missed);
+			assertEquals(bus.getPublished(), tally.events);
+			assertEquals(games, tally.games);
+			assertEquals(pieces, tally.spawned);
+			assertEquals(lines, tally.lines);
+			assertEquals(score, tally.score);
+			assertTrue(tally.batches < tally.events);
+		}
+	}
+
+	/**
+	 * A listener held up while the ring goes round several times is told how many events it lost, and every event is
+	 * either delivered or counted as lost.
+	 */
+	@Test
+	public void slowListenerIsToldWhatItMissed() throws InterruptedException {
+		GameEventBus bus = new GameEventBus(8);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Tally slow = new Tally() {
+			@Override
+			public void gameStarted(int tick) {
+				super.gameStarted(tick);
+				blocked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		bus.subscribe(slow);
+		bus.publish(Constants.Event.Started, 0, 0, 0, 0, 0);
+		bus.flush();
+		blocked.await();
+		int published = 100;
+		for (int i = 1; i < published; i++) {
+			bus.publish(Constants.Event.PieceMoved, i, Constants.Movement.Down.ordinal(), 0, i, 0);
+		}
+		release.countDown();
+		bus.flush();
+		bus.unsubscribe(slow);
+		assertTrue("missed " + slow.missed, slow.missed >= published - 1 - 8);
+		assertEquals(published, slow.events + slow.missed);
+	}
+
+	/**
+	 * Plays a seeded game of at most 500 pieces with the default evaluator, flushing after every tick.
+	 */
+	private static void play(GameEngine engine, long seed) {
+		MovePolicy policy = new EvaluatorPolicy(new BoardEvaluator());
+		engine.setSeed(seed);
+		engine.start();
+		while (!engine.isGameOver() && engine.getPieces() <= 500) {
+			for (int i = 0; i < 40; i++) {
+				Constants.Movement movement = policy.nextMove(engine);
+				if (movement == null) {
+					break;
+				}
+				engine.step(movement);
+			}
+			engine.tick();
+			engine.getEvents().flush();
+		}
+	}
+
+	/**
+	 * Counts what it is told.
+	 */
+	private static class Tally implements GameListener {
+		long events;
+		long batches;
+		long missed;
+		long games;
+		long spawned;
+		long lines;
+		long score;
+		long gameScore;
+
+		@Override
+		public void gameStarted(int tick) {
+			events++;
+			games++;
+			score += gameScore;
+			gameScore = 0;
+		}
+
+		@Override
+		public void pieceSpawned(int tick, Constants.Type type, int rotation, int y, int x) {
+			events++;
+			spawned++;
+		}
+
+		@Override
+		public void pieceMoved(int tick, Constants.Movement movement, int rotation, int y, int x) {
+			events++;
+		}
+
+		@Override
+		public void pieceRotated(int tick, Constants.Movement movement, int rotation, int y, int x) {
+			events++;
+		}
+
+		@Override
+		public void pieceLocked(int tick, Constants.Type type, int rotation, int y, int x) {
+			events++;
+		}
+
+		@Override
+		public void linesCleared(int tick, int count, int rows, int score) {
+			events++;
+			lines += count;
+			gameScore = score;
+		}
+
+		@Override
+		public void levelUp(int tick, int level, int delay) {
+			events++;
+		}
+
+		@Override
+		public void gameOver(int tick, int score, int lines, int pieces) {
+			events++;
+		}
+
+		@Override
+		public void endOfBatch() {
+			batches++;
+		}
+
+		@Override
+		public void missed(long events) {
+			missed += events;
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/**
+ * Tests of SnapshotRing and of rolling back an engine and its replay.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SnapshotRingTest {
+
+	// All movements.
+	private static final Constants.Movement[] movements = Constants.Movement.values();
+
+	// Frames kept, and so the farthest a rollback goes.
+	private static final int window = 8;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Plays random moves with gravity every few frames, rolling back and playing the same frames again now and then,
+	 * and compares the game after every frame with one that never rolls back.
+	 */
+	@Test
+	public void rollbackMatchesAGameThatNeverRollsBack() {
+		int frames = 20000;
+		int[] inputs = inputs(frames, 1);
+		GameRandom rand = new GameRandom(2);
+		GameEngine reference = new GameEngine(new GameRandom());
+		GameEngine engine = new GameEngine(new GameRandom());
+		reference.setSeed(1);
+		reference.start();
+		engine.setSeed(1);
+		engine.start();
+		SnapshotRing ring = new SnapshotRing(window + 1);
+		int rollbacks = 0;
+		for (int f = 0; f < frames; f++) {
+			play(reference, inputs[f], f, true);
+			ring.capture(engine, f, f % 3);
+			play(engine, inputs[f], f, true);
+			int back = rand.nextInt(window + 1);
+			if (f % 4 == 0 && back > 0 && ring.contains(f - back + 1)) {
+				// Roll back to the start of an earlier frame and play up to here again.
+				long from = f - back + 1;
+				assertEquals(from % 3, ring.restore(engine, from));
+				rollbacks++;
+				for (long g = from; g <= f; g++) {
+					ring.capture(engine, g, g % 3);
+					play(engine, inputs[(int) g], g, true);
+				}
+			}
+			assertSameGame(reference, engine);
+		}
+		assertTrue(rollbacks > 1000);
+	}
+
+	/**
+	 * Rolls back recorded games now and then, playing other moves the second time, and checks that their replays play
+	 * back to the same games.
+	 */
+	@Test
+	public void rollbackTakesBackRecordedMoves() throws IOException {
+		int frames = 3000;
+		int[] inputs = inputs(frames, 3);
+		GameRandom rand = new GameRandom(4);
+		GameEngine engine = new GameEngine(new GameRandom());
+		GameEngine played = new GameEngine(new GameRandom());
+		ReplayRecorder recorder = new ReplayRecorder();
+		engine.setRecorder(recorder);
+		SnapshotRing ring = new SnapshotRing(window + 1);
+		File file = folder.newFile("rollback.trpl");
+		int rollbacks = 0;
+		for (int game = 0; game < 20; game++) {
+			engine.setSeed(game);
+			engine.start();
+			recorder.begin(engine.getSeed(), engine.getRandomizer().getName());
+			for (int f = 0; f < frames && !engine.isGameOver(); f++) {
+				ring.capture(engine, f, 0);
+				play(engine, inputs[f], f, false);
+				int back = rand.nextInt(window + 1);
+				if (f % 4 == 0 && back > 0 && ring.contains(f - back + 1)) {
+					long from = f - back + 1;
+					ring.restore(engine, from);
+					rollbacks++;
+					// Other moves this time, the first ones must not show up in the replay.
+					for (long g = from; g <= f && !engine.isGameOver(); g++) {
+						ring.capture(engine, g, 0);
+						play(engine, inputs[(int) (frames - 1 - g)], g, false);
+					}
+				}
+			}
+			recorder.finish(engine.getTicks());
+			recorder.write(file.toPath());
+			new ReplayPlayer(file.toPath()).play(played);
+			assertSameGame(engine, played);
+		}
+		assertTrue(rollbacks > 100);
+	}
+
+	/**
+	 * Rolling back to a frame of an earlier recording cannot be played back, so it stops recording.
+	 */
+	@Test
+	public void rollbackToAnotherRecordingStopsRecording() {
+		GameEngine engine = new GameEngine(new GameRandom());
+		ReplayRecorder recorder = new ReplayRecorder();
+		engine.setRecorder(recorder);
+		engine.start();
+		recorder.begin(engine.getSeed(), engine.getRandomizer().getName());
+		SnapshotRing ring = new SnapshotRing(1);
+		ring.capture(engine, 0, 0);
+		engine.start();
+		recorder.begin(engine.getSeed(), engine.getRandomizer().getName());
+		ring.restore(engine, 0);
+		assertFalse(recorder.isRecording());
+	}
+
+	/**
+	 * Returns the input of every frame, -1 for none. Hard drops are rare so that games last.
+	 */
+	private static int[] inputs(int frames, long seed) {
+		GameRandom rand = new GameRandom(seed);
+		int[] inputs = new int[frames];
+		for (int f = 0; f < frames; f++) {
+			int input = rand.nextInt(12) - 6;
+			inputs[f] = input == movements.length - 1 && rand.nextInt(4) != 0 ? -1 : input;
+		}
+		return inputs;
+	}
+
+	/**
+	 * Plays one frame: the input, then gravity every third frame. A game that is over starts again if restart is set.
+	 */
+	private static void play(GameEngine engine, int input, long frame, boolean restart) {
+		if (engine.isGameOver() && restart) {
+			engine.setSeed(frame);
+			engine.start();
+		}
+		if (input >= 0) {
+			engine.step(movements[input]);
+		}
+		if (frame % 3 == 0) {
+			engine.tick();
+		}
+	}
+
+	private static void assertSameGame(GameEngine expected, GameEngine actual) {
+		assertEquals(expected.getHash(), actual.getHash());
+		assertEquals(expected.getScore(), actual.getScore());
+		assertEquals(expected.getTicks(), actual.getTicks());
+		assertEquals(expected.getPieces(), actual.getPieces());
+		assertEquals(expected.getPreview(PieceQueue.maxPreview - 1), actual.getPreview(PieceQueue.maxPreview - 1));
+		assertEquals(expected.getFallingPiece().getY(), actual.getFallingPiece().getY());
+		assertEquals(expected.getFallingPiece().getX(), actual.getFallingPiece().getX());
+	}
+}
@@ -0,0 +1,239 @@
+/**
+ * The setups behind the JMH benchmarks. JMH only accepts benchmarks in a named package, which cannot see the classes
+ * of the game in the default package, so the benchmarks look these up by name and call them through an IntSupplier.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+public class BenchmarkFixtures {
+
+	// Seed of every engine, so all runs measure the same pieces.
+	private static final long seed = 42;
+
+	/**
+	 * One move of the falling piece, put back to the same place before every call. A hard drop locks the piece, so
+	 * its calls also include spawning the next one and loading the empty board and the same piece again.
+	 * @param name The name of the movement as defined in Constants.
+	 * @return The operation to measure.
+	 */
+	public static IntSupplier move(String name) {
+		final Constants.Movement movement = Constants.Movement.valueOf(name);
+		final GameEngine engine = new GameEngine(new Random(seed));
+		engine.start();
+		// Move it a few rows down so that every movement has room.
+		for (int i = 0; i < 5; i++) {
+			engine.step(Constants.Movement.Down);
+		}
+		final Piece piece = engine.getFallingPiece();
+		final Constants.Type type = piece.getType();
+		final int rotation = piece.getRotation();
+		final int y = piece.getY();
+		final int x = piece.getX();
+		final int[] rows = new int[GameEngine.height];
+		final byte[] cells = new byte[GameEngine.height * GameEngine.width];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = engine.getRow(i);
+		}
+		return () -> {
+			if (engine.isFinished()) {
+				engine.tick();
+				engine.load(rows, cells);
+				piece.spawn(type);
+			}
+			piece.set(rotation, y, x);
+			return engine.step(movement) ? 1 : 0;
+		};
+	}
+
+	/**
+	 * One rotation of a shape and a read of its row masks.
+	 * @param name The name of the type as defined in Constants.
+	 * @return The operation to measure.
+	 */
+	public static IntSupplier rotate(String name) {
+		final Shape shape = Shape.of(Constants.Type.valueOf(name));
+		final int[] rotation = new int[1];
+		return () -> {
+			int r = Shape.rotateRight(rotation[0]);
+			r = Shape.rotateRight(Shape.rotateLeft(r));
+			rotation[0] = r;
+			int masks = 0;
+			for (int i = 0; i < shape.getBoxSize(); i++) {
+				masks ^= shape.getRowMask(r, i);
+			}
+			return masks;
+		};
+	}
+
+	/**
+	 * Removal of full lines on a board with some full rows at the bottom and a ragged stack above them.
+	 * The board is loaded again before every call, see loadLines for the cost of that alone.
+	 * @param fullRows The number of full rows, 0 to 4.
+	 * @return The operation to measure.
+	 */
+	public static IntSupplier checkAndRemoveLines(String fullRows) {
+		final GameEngine engine = new GameEngine(new Random(seed));
+		engine.start();
+		final int[] rows = new int[GameEngine.height];
+		final byte[] cells = new byte[GameEngine.height * GameEngine.width];
+		linesBoard(engine, Integer.parseInt(fullRows), rows, cells);
+		return () -> {
+			engine.load(rows, cells);
+			engine.checkAndRemoveLines();
+			return engine.getRow(GameEngine.height - 1);
+		};
+	}
+
+	/**
+	 * Loading the board of checkAndRemoveLines without removing its lines, the part of that benchmark that is not the
+	 * removal.
+	 * @param fullRows The number of full rows, 0 to 4.
+	 * @return The operation to measure.
+	 */
+	public static IntSupplier loadLines(String fullRows) {
+		final GameEngine engine = new GameEngine(new Random(seed));
+		engine.start();
+		final int[] rows = new int[GameEngine.height];
+		final byte[] cells = new byte[GameEngine.height * GameEngine.width];
+		linesBoard(engine, Integer.parseInt(fullRows), rows, cells);
+		return () -> {
+			engine.load(rows, cells);
+			return engine.getRow(GameEngine.height - 1);
+		};
+	}
+
+	/**
+	 * Builds a board with some full rows at the bottom and a ragged stack above them.
+	 */
+	private static void linesBoard(GameEngine engine, int full, int[] rows, byte[] cells) {
+		int height = GameEngine.height;
+		int width = GameEngine.width;
+		for (int y = 0; y < height; y++) {
+			rows[y] = engine.getRow(0);
+			int fromBottom = height - 1 - y;
+			for (int x = 0; x < width; x++) {
+				boolean filled = fromBottom < full || (fromBottom < full + 6 && x != fromBottom % width);
+				if (filled) {
+					rows[y] |= 1 << (x + 3);
+					cells[y * width + x] = (byte) (1 + (x + y) % 7);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Picking the next piece.
+	 * @param unused Not used, all fixtures take one parameter.
+	 * @return The operation to measure.
+	 */
+	public static IntSupplier generateNewPiece(String unused) {
+		final GameEngine engine = new GameEngine(new Random(seed));
+		engine.start();
+		return () -> {
+			engine.generateNewPiece();
+			return engine.getFallingPiece().getType().ordinal();
+		};
+	}
+
+	/**
+	 * A search for every placement of the falling piece on an empty board.
+	 * @param unused Not used, all fixtures take one parameter.
+	 * @return The operation to measure.
+	 */
+	public static IntSupplier findPlacements(String unused) {
+		final GameEngine engine = new GameEngine(new Random(seed));
+		engine.start();
+		final PlacementFinder finder = new PlacementFinder();
+		return () -> finder.find(engine);
+	}
+
+	/**
+	 * A full paint of a board into an offscreen image of the size of the window.
+	 * @param unused Not used, all fixtures take one parameter.
+	 * @return The operation to measure.
+	 */
+	public static IntSupplier paint(String unused) {
+		final Board board = new Board(null);
+		board.setSize(400, 880);
+		board.getEngine().start();
+		BufferedImage image = new BufferedImage(400, 880, BufferedImage.TYPE_INT_RGB);
+		final Graphics g = image.createGraphics();
+		return () -> {
+			board.paint(g);
+			return 0;
+		};
+	}
+
+	/**
+	 * One placement hard dropped on every board of a batch, cycling through all shapes, rotations and columns and
+	 * starting over before the boards fill up.
+	 * @param boards The number of boards in the batch.
+	 * @return The operation to measure.
+	 */
+	public static IntSupplier batchPlace(String boards) {
+		final BatchEngine batch = new BatchEngine(Integer.parseInt(boards));
+		final Shape[] shapes = new Shape[7];
+		Constants.Type[] types = Constants.Type.values();
+		for (int i = 0; i < shapes.length; i++) {
+			shapes[i] = Shape.of(types[i + 1]);
+		}
+		final int[] calls = new int[1];
+		return () -> {
+			int call = calls[0]++;
+			if (call % 40 == 0) {
+				batch.start();
+			}
+			batch.place(shapes[call % 7], call % 4, call % (GameEngine.width - 2), null);
+			return batch.getPieces(0);
+		};
+	}
+
+	/**
+	 * A rollback: capture the engine into a ring of frames and restore the frame before, or only capture.
+	 * @param operation capture or rollback.
+	 * @return The operation to measure.
+	 */
+	public static IntSupplier snapshot(String operation) {
+		final GameEngine engine = new GameEngine(new GameRandom(seed));
+		engine.start();
+		final SnapshotRing ring = new SnapshotRing(8);
+		final boolean rollback = operation.equals("rollback");
+		final long[] frame = new long[1];
+		ring.capture(engine, frame[0]++, 0);
+		return () -> {
+			ring.capture(engine, frame[0], 0);
+			if (rollback) {
+				ring.restore(engine, frame[0] - 1);
+			}
+			frame[0]++;
+			return engine.getScore();
+		};
+	}
+
+	/**
+	 * Publishing one event to a bus, flushed every eight events as a game loop flushes once per logic step.
+	 * @param listeners The number of listeners subscribed, each following the ring on a thread of its own.
+	 * @return The operation to measure.
+	 */
+	public static IntSupplier publish(String listeners) {
+		final GameEventBus bus = new GameEventBus(4096);
+		for (int i = Integer.parseInt(listeners); i > 0; i--) {
+			bus.subscribe(new GameListener() {
+			});
+		}
+		final int[] calls = new int[1];
+		return () -> {
+			int call = calls[0]++;
+			bus.publish(Constants.Event.PieceMoved, call, Constants.Movement.Down.ordinal(), 0, call & 15, 4);
+			if ((call & 7) == 7) {
+				bus.flush();
+			}
+			return call;
+		};
+	}
+}
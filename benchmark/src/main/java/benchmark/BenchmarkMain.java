@@ -0,0 +1,29 @@
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler always enabled, so every result comes with its allocation rate.
+ * Takes the usual JMH command line options.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+public class BenchmarkMain {
+
+	/**
+	 * Main method.
+	 * @param args JMH command line options.
+	 * @throws Exception If the options are invalid or a benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,189 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the hot paths of the game engine.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EngineBenchmark {
+
+	@State(Scope.Thread)
+	public static class MoveState {
+		@Param({ "MoveLeft", "MoveRight", "RotateLeft", "RotateRight", "Down", "HardDrop" })
+		String movement;
+		IntSupplier operation;
+
+		@Setup
+		public void setup() {
+			operation = Fixtures.lookup("move", movement);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class RotateState {
+		@Param({ "Straight", "L", "RevL", "T", "S", "Z", "Square" })
+		String type;
+		IntSupplier operation;
+
+		@Setup
+		public void setup() {
+			operation = Fixtures.lookup("rotate", type);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class LinesState {
+		@Param({ "0", "1", "2", "3", "4" })
+		String fullRows;
+		IntSupplier operation;
+		IntSupplier load;
+
+		@Setup
+		public void setup() {
+			operation = Fixtures.lookup("checkAndRemoveLines", fullRows);
+			load = Fixtures.lookup("loadLines", fullRows);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class PieceState {
+		IntSupplier operation;
+
+		@Setup
+		public void setup() {
+			operation = Fixtures.lookup("generateNewPiece", "");
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class PlacementState {
+		IntSupplier operation;
+
+		@Setup
+		public void setup() {
+			operation = Fixtures.lookup("findPlacements", "");
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class PaintState {
+		IntSupplier operation;
+
+		@Setup
+		public void setup() {
+			operation = Fixtures.lookup("paint", "");
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class BatchState {
+		@Param({ "64", "1024" })
+		String boards;
+		IntSupplier operation;
+
+		@Setup
+		public void setup() {
+			operation = Fixtures.lookup("batchPlace", boards);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class SnapshotState {
+		@Param({ "capture", "rollback" })
+		String snapshot;
+		IntSupplier operation;
+
+		@Setup
+		public void setup() {
+			operation = Fixtures.lookup("snapshot", snapshot);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class PublishState {
+		@Param({ "0", "1", "2" })
+		String listeners;
+		IntSupplier operation;
+
+		@Setup
+		public void setup() {
+			operation = Fixtures.lookup("publish", listeners);
+		}
+	}
+
+	@Benchmark
+	public int tryMove(MoveState state) {
+		return state.operation.getAsInt();
+	}
+
+	@Benchmark
+	public int rotate(RotateState state) {
+		return state.operation.getAsInt();
+	}
+
+	/**
+	 * Includes loading the board before the removal, subtract loadLines of the same fullRows for the removal alone.
+	 */
+	@Benchmark
+	public int checkAndRemoveLines(LinesState state) {
+		return state.operation.getAsInt();
+	}
+
+	@Benchmark
+	public int loadLines(LinesState state) {
+		return state.load.getAsInt();
+	}
+
+	@Benchmark
+	public int generateNewPiece(PieceState state) {
+		return state.operation.getAsInt();
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int findPlacements(PlacementState state) {
+		return state.operation.getAsInt();
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int paint(PaintState state) {
+		return state.operation.getAsInt();
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int batchPlace(BatchState state) {
+		return state.operation.getAsInt();
+	}
+
+	@Benchmark
+	public int snapshot(SnapshotState state) {
+		return state.operation.getAsInt();
+	}
+
+	@Benchmark
+	public int publish(PublishState state) {
+		return state.operation.getAsInt();
+	}
+}
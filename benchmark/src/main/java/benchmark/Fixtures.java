@@ -0,0 +1,29 @@
+package benchmark;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Looks up the setups in BenchmarkFixtures, which lives in the default package together with the game.
+ *
+ * @author Fredrik Ollinen Johansson
+ */
+final class Fixtures {
+
+	private Fixtures() {
+	}
+
+	/**
+	 * Builds the operation to measure.
+	 * @param name The name of the method in BenchmarkFixtures.
+	 * @param parameter The parameter passed to it.
+	 * @return The operation to measure.
+	 */
+	static IntSupplier lookup(String name, String parameter) {
+		try {
+			return (IntSupplier) Class.forName("BenchmarkFixtures").getMethod(name, String.class)
+					.invoke(null, parameter);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("No benchmark fixture " + name, e);
+		}
+	}
+}